@@ -0,0 +1,84 @@
+package com.test.spring.example;
+
+import org.springframework.core.ControlFlow;
+import org.springframework.core.ControlFlowFactory;
+
+/**
+ * Compares the cost of create-and-check with the default ControlFlow
+ * and with the StackWalker-based one, at a given stack depth:
+ * a match near the top of the stack, no match at all, and a token
+ * that matches near the top or only matches the bottom frame.
+ * <p>Usage: ControlFlowBenchmark [depth] [iterations]
+ */
+public class ControlFlowBenchmark {
+
+	private static final int WARMUP_ROUNDS = 3;
+
+	private final int iterations;
+
+	public ControlFlowBenchmark(int iterations) {
+		this.iterations = iterations;
+	}
+
+	public static void main(String[] args) {
+		int depth = (args.length > 0 ? Integer.parseInt(args[0]) : 40);
+		int iterations = (args.length > 1 ? Integer.parseInt(args[1]) : 20000);
+		ControlFlowBenchmark benchmark = new ControlFlowBenchmark(iterations);
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			benchmark.descend(depth, false);
+		}
+		benchmark.descend(depth, true);
+	}
+
+	private void descend(int depth, boolean report) {
+		if (depth > 0) {
+			descend(depth - 1, report);
+			return;
+		}
+		run(false, report);
+		run(true, report);
+	}
+
+	private void run(boolean stackWalker, boolean report) {
+		String name = (stackWalker ? "StackWalker" : "default");
+		long matchNearTop = measure(stackWalker, 0);
+		long noMatch = measure(stackWalker, 1);
+		long tokenNearTop = measure(stackWalker, 2);
+		long tokenAtBottom = measure(stackWalker, 3);
+		if (report) {
+			System.out.println(name + ": match near top " + matchNearTop + " ns, no match " + noMatch +
+					" ns, token near top " + tokenNearTop + " ns, token at bottom " + tokenAtBottom + " ns");
+		}
+	}
+
+	private long measure(boolean stackWalker, int check) {
+		int matches = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < this.iterations; i++) {
+			ControlFlow cflow = (stackWalker ? ControlFlowFactory.createStackWalkerControlFlow() :
+					ControlFlowFactory.createControlFlow());
+			boolean matched = false;
+			if (check == 0) {
+				matched = cflow.under(ControlFlowBenchmark.class, "measure");
+			}
+			else if (check == 1) {
+				matched = cflow.under(String.class);
+			}
+			else if (check == 2) {
+				matched = cflow.underToken("ControlFlowBenchmark.measure");
+			}
+			else {
+				matched = cflow.underToken("ControlFlowBenchmark.main");
+			}
+			if (matched) {
+				matches++;
+			}
+		}
+		long nanos = (System.nanoTime() - start) / this.iterations;
+		if (matches != (check == 1 ? 0 : this.iterations)) {
+			throw new IllegalStateException("Unexpected number of matches: " + matches);
+		}
+		return nanos;
+	}
+
+}
@@ -17,8 +17,9 @@
 package org.springframework.beans.factory.access;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -262,6 +263,11 @@ import org.springframework.core.io.support.ResourcePatternResolver;
  * 
  * &lt;/beans>
  * </pre>
+ *
+ * <p>Lookups of an already loaded group don't acquire any lock. Loading
+ * and destroying a group only locks that group: Concurrent lookups of the
+ * same group wait for the load in progress instead of loading it again,
+ * while lookups of other groups proceed.
  *   
  * @author Colin Sampaleanu
  * @see org.springframework.context.access.DefaultLocatorFactory
@@ -273,13 +279,11 @@ public class SingletonBeanFactoryLocator implements BeanFactoryLocator {
 	protected static final Log logger = LogFactory.getLog(SingletonBeanFactoryLocator.class);
 
 	// the keyed singleton instances
-	private static Map instances = new HashMap();
-
+	private static final ConcurrentMap instances = new ConcurrentHashMap();
 
-	// we map BeanFactoryGroup objects by String keys, and by the definition object
-	private Map bfgInstancesByKey = new HashMap();
 
-	private Map bfgInstancesByObj = new HashMap();
+	// we map BeanFactoryGroup objects by String keys
+	private final ConcurrentMap bfgInstancesByKey = new ConcurrentHashMap();
 
 	private String resourceName;
 
@@ -315,19 +319,21 @@ public class SingletonBeanFactoryLocator implements BeanFactoryLocator {
 		if (selector.indexOf(':') == -1)
 			selector = ResourcePatternResolver.CLASSPATH_URL_PREFIX + selector;
 		
-		synchronized (instances) {
-			// debugging trace only
-			//if (logger.isDebugEnabled()) {
-			//	logger.debug("SingletonBeanFactoryLocator.getInstance(): instances.hashCode=" +
-			//	             instances.hashCode() + ", instances=" + instances);
-			//}
-			BeanFactoryLocator bfl = (BeanFactoryLocator) instances.get(selector);
+		// debugging trace only
+		//if (logger.isDebugEnabled()) {
+		//	logger.debug("SingletonBeanFactoryLocator.getInstance(): instances.hashCode=" +
+		//	             instances.hashCode() + ", instances=" + instances);
+		//}
+		BeanFactoryLocator bfl = (BeanFactoryLocator) instances.get(selector);
+		if (bfl == null) {
+			// creating a locator is cheap, the group definition is loaded lazily
+			BeanFactoryLocator newBfl = new SingletonBeanFactoryLocator(selector);
+			bfl = (BeanFactoryLocator) instances.putIfAbsent(selector, newBfl);
 			if (bfl == null) {
-				bfl = new SingletonBeanFactoryLocator(selector);
-				instances.put(selector, bfl);
+				bfl = newBfl;
 			}
-			return bfl;
 		}
+		return bfl;
 	}
 
 
@@ -351,98 +357,121 @@ public class SingletonBeanFactoryLocator implements BeanFactoryLocator {
 	}
 
 	public BeanFactoryReference useBeanFactory(String factoryKey) throws BeansException {
-		synchronized (this.bfgInstancesByKey) {
-			BeanFactoryGroup bfg = (BeanFactoryGroup) this.bfgInstancesByKey
-					.get(this.resourceName);
-
-			if (bfg != null) {
-				// debugging trace only
-				//if (logger.isDebugEnabled()) {
-				//	logger.debug("Factory group with resourceName '" + this.resourceName
-				//			+ "' requested. Using existing instance.");
-				//}
-				bfg.refCount++;
-			}
-			else {
-				// this group definition doesn't exist, we need to try to load it
-				if (logger.isDebugEnabled()) {
-					logger.debug("Factory group with resource name [" + this.resourceName
-							+ "] requested. Creating new instance.");
-				}
-				
-				BeanFactory groupContext = createDefinition(this.resourceName, factoryKey);
-
-				bfg = new BeanFactoryGroup();
-				bfg.definition = groupContext;
-				bfg.refCount = 1;
-				this.bfgInstancesByKey.put(this.resourceName, bfg);
-				this.bfgInstancesByObj.put(groupContext, bfg);
-			}
-
-			final BeanFactory groupContext = bfg.definition;
+		final BeanFactoryGroup bfg = obtainBeanFactoryGroup(factoryKey);
+		final BeanFactory groupContext = bfg.definition;
+		String lookupId = factoryKey;
+		Object bean;
+		try {
+			bean = groupContext.getBean(lookupId);
+		}
+		catch (BeansException ex) {
+			throw new FatalBeanException("Unable to return specified BeanFactory instance: factory key [" +
+					factoryKey + "], from group with resource name [" + this.resourceName + "]", ex);
+		}
 
-			String lookupId = factoryKey;
-			Object bean;
+		if (bean instanceof String) {
+			// we have some indirection
+			lookupId = (String) bean;
 			try {
 				bean = groupContext.getBean(lookupId);
 			}
 			catch (BeansException ex) {
-				throw new FatalBeanException("Unable to return specified BeanFactory instance: factory key [" +
-						factoryKey + "], from group with resource name [" + this.resourceName + "]", ex);
+				throw new FatalBeanException("Unable to return specified BeanFactory instance: lookup ID [" +
+						lookupId + "], factory key [" + factoryKey + "], from group with resource name [" +
+						this.resourceName + "]", ex);
 			}
+		}
 
-			if (bean instanceof String) {
-				// we have some indirection
-				lookupId = (String) bean;
-				try {
-					bean = groupContext.getBean(lookupId);
-				}
-				catch (BeansException ex) {
-					throw new FatalBeanException("Unable to return specified BeanFactory instance: lookup ID [" +
-							lookupId + "], factory key [" + factoryKey + "], from group with resource name [" +
-							this.resourceName + "]", ex);
-				}
-			}
+		if (!(bean instanceof BeanFactory)) {
+			throw new FatalBeanException("Returned bean is not BeanFactory or its subclass. lookup ID [" +
+					lookupId + "], factory key [" + factoryKey + "], from group with resource name [" +
+					this.resourceName + "]. Returned object class is [" + bean.getClass().getName() + "]");
+		}
 
-			if (!(bean instanceof BeanFactory)) {
-				throw new FatalBeanException("Returned bean is not BeanFactory or its subclass. lookup ID [" +
-						lookupId + "], factory key [" + factoryKey + "], from group with resource name [" +
-						this.resourceName + "]. Returned object class is [" + bean.getClass().getName() + "]");
+		final BeanFactory beanFactory = (BeanFactory) bean;
+
+		return new BeanFactoryReference() {
+			
+			public BeanFactory getFactory() {
+				return beanFactory;
 			}
 
-			final BeanFactory beanFactory = (BeanFactory) bean;
+			public void release() throws FatalBeanException {
+				releaseBeanFactoryGroup(bfg);
+			}
+		};
+	}
 
-			return new BeanFactoryReference() {
-				
-				BeanFactory groupContextRef;
-				
-				// constructor
-				{
-					this.groupContextRef = groupContext;
+	/**
+	 * Return the group for this locator's resource name with its reference
+	 * count incremented, loading the group definition if necessary.
+	 * <p>Already loaded groups are returned without locking. Otherwise,
+	 * only the group being loaded gets locked, so that concurrent callers
+	 * wait for the same load.
+	 */
+	private BeanFactoryGroup obtainBeanFactoryGroup(String factoryKey) throws BeansException {
+		while (true) {
+			BeanFactoryGroup bfg = (BeanFactoryGroup) this.bfgInstancesByKey.get(this.resourceName);
+			if (bfg != null) {
+				if (bfg.acquire()) {
+					return bfg;
+				}
+				if (Thread.holdsLock(bfg)) {
+					throw new FatalBeanException("Factory group with resource name [" + this.resourceName +
+							"] requested while being loaded or destroyed by the current thread");
 				}
-				
-				public BeanFactory getFactory() {
-					return beanFactory;
+				// being loaded or destroyed by another thread: wait for it, then try again
+				synchronized (bfg) {
 				}
+				continue;
+			}
 
-				public void release() throws FatalBeanException {
-					synchronized (bfgInstancesByKey) {
-						BeanFactoryGroup bfg = (BeanFactoryGroup) bfgInstancesByObj.get(this.groupContextRef);
-						if (bfg != null) {
-							bfg.refCount--;
-							if (bfg.refCount == 0) {
-								destroyDefinition(this.groupContextRef, resourceName);
-								bfgInstancesByKey.remove(resourceName);
-								bfgInstancesByObj.remove(this.groupContextRef);
-							}
-						}
-						else {
-							logger.warn("Tried to release a SingletonBeanFactoryLocator (or subclass) group definition " +
-									"more times than it has actually been used. Resource name [" + resourceName + "]");
-						}
+			// this group definition doesn't exist, we need to try to load it
+			BeanFactoryGroup newBfg = new BeanFactoryGroup();
+			synchronized (newBfg) {
+				if (this.bfgInstancesByKey.putIfAbsent(this.resourceName, newBfg) != null) {
+					continue;
+				}
+				if (logger.isDebugEnabled()) {
+					logger.debug("Factory group with resource name [" + this.resourceName
+							+ "] requested. Creating new instance.");
+				}
+				boolean success = false;
+				try {
+					newBfg.definition = createDefinition(this.resourceName, factoryKey);
+					newBfg.refCount.set(1);
+					success = true;
+				}
+				finally {
+					if (!success) {
+						this.bfgInstancesByKey.remove(this.resourceName, newBfg);
 					}
 				}
-			};
+				return newBfg;
+			}
+		}
+	}
+
+	/**
+	 * Decrement the reference count of the given group,
+	 * destroying its definition once it is not referenced anymore.
+	 */
+	private void releaseBeanFactoryGroup(BeanFactoryGroup bfg) throws BeansException {
+		synchronized (bfg) {
+			if (this.bfgInstancesByKey.get(this.resourceName) != bfg || bfg.refCount.get() <= 0) {
+				logger.warn("Tried to release a SingletonBeanFactoryLocator (or subclass) group definition " +
+						"more times than it has actually been used. Resource name [" + this.resourceName + "]");
+				return;
+			}
+			if (bfg.refCount.decrementAndGet() == 0) {
+				// keep the group registered while destroying, so that lookups wait for it
+				try {
+					destroyDefinition(bfg.definition, this.resourceName);
+				}
+				finally {
+					this.bfgInstancesByKey.remove(this.resourceName, bfg);
+				}
+			}
 		}
 	}
 
@@ -498,11 +527,27 @@ public class SingletonBeanFactoryLocator implements BeanFactoryLocator {
 
 
 	// We track BeanFactory instances with this class.
+	// The reference count is 0 while loading and once released.
 	private static class BeanFactoryGroup {
 
-		private BeanFactory definition;
+		private volatile BeanFactory definition;
+
+		private final AtomicInteger refCount = new AtomicInteger(0);
 
-		private int refCount = 0;
+		/**
+		 * Increment the reference count if the group is in use.
+		 * @return whether the group was in use
+		 */
+		public boolean acquire() {
+			int count = this.refCount.get();
+			while (count > 0) {
+				if (this.refCount.compareAndSet(count, count + 1)) {
+					return true;
+				}
+				count = this.refCount.get();
+			}
+			return false;
+		}
 	}
 
 }
@@ -20,16 +20,22 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.beans.BeansException;
 import org.springframework.beans.FatalBeanException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.BeanFactoryUtils;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.support.AbstractBeanFactory;
 import org.springframework.util.StringUtils;
 
 /**
@@ -59,13 +65,19 @@ import org.springframework.util.StringUtils;
  * can be used as bean name as-is, provided that corresponding beans are defined in the bean
  * factory. Alternatively, mappings between service ids and bean names can be defined.
  *
+ * <p>The signature check and the mapping for calls without id are determined once
+ * per locator method. A bean located by type is cached if it is a singleton, until
+ * bean names get registered or removed anywhere in the factory hierarchy or the
+ * factory destroys its singletons. This requires an AbstractBeanFactory hierarchy;
+ * other factories get asked on each call.
+ *
  * @author Colin Sampaleanu
  * @author Juergen Hoeller
  * @since 1.1.4
  * @see #setServiceLocatorInterface
  * @see #setServiceMappings
  */
-public class ServiceLocatorFactoryBean implements FactoryBean, BeanFactoryAware, InitializingBean {
+public class ServiceLocatorFactoryBean implements FactoryBean, BeanFactoryAware, InitializingBean, DisposableBean {
 
 	private Class serviceLocatorInterface;
 
@@ -75,6 +87,9 @@ public class ServiceLocatorFactoryBean implements FactoryBean, BeanFactoryAware,
 
 	private Object proxy;
 
+	/** Map from invoked Method to MethodDispatch */
+	private final Map methodDispatchCache = new ConcurrentHashMap();
+
 
 	/**
 	 * Set the service locator interface to use, which must have one or more methods with
@@ -131,50 +146,75 @@ public class ServiceLocatorFactoryBean implements FactoryBean, BeanFactoryAware,
 		return true;
 	}
 
+	/**
+	 * Clear the cached singleton targets located by type,
+	 * as the bean factory is destroying its singletons.
+	 */
+	public void destroy() {
+		for (Iterator it = this.methodDispatchCache.values().iterator(); it.hasNext();) {
+			((MethodDispatch) it.next()).typeTarget = null;
+		}
+	}
 
 	/**
-	 * Invocation handler that delegates service locator calls to the bean factory.
+	 * Return the dispatch metadata for the given invoked method,
+	 * computing it on first invocation.
 	 */
-	private class ServiceLocatorInvocationHandler implements InvocationHandler {
+	private MethodDispatch getMethodDispatch(Method method) {
+		MethodDispatch dispatch = (MethodDispatch) this.methodDispatchCache.get(method);
+		if (dispatch == null) {
+			dispatch = new MethodDispatch(method);
+			this.methodDispatchCache.put(method, dispatch);
+		}
+		return dispatch;
+	}
 
-		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-			try {
-				Class[] paramTypes = method.getParameterTypes();
-				Method interfaceMethod = serviceLocatorInterface.getMethod(method.getName(), paramTypes);
-				Class serviceLocatorReturnType = interfaceMethod.getReturnType();
-
-				// Check whether the method is a valid service locator.
-				if (paramTypes.length > 1 || void.class.equals(serviceLocatorReturnType)) {
-					throw new UnsupportedOperationException(
-							"May only call methods with signature '<type> xxx()' or '<type> xxx(<idtype> id)' " +
-							"on factory interface, but tried to call: " + interfaceMethod);
-				}
+	/**
+	 * Locate the single bean that matches the given method's return type,
+	 * reusing a cached singleton target if still valid.
+	 */
+	private Object getBeanOfType(MethodDispatch dispatch) throws BeansException {
+		long generation = getBeanFactoryGeneration();
+		TypeTarget typeTarget = dispatch.typeTarget;
+		if (typeTarget != null && generation != -1 && typeTarget.generation == generation) {
+			return typeTarget.target;
+		}
+		Map beansOfType = BeanFactoryUtils.beansOfTypeIncludingAncestors(this.beanFactory, dispatch.returnType);
+		if (beansOfType.size() != 1) {
+			throw new NoSuchBeanDefinitionException(
+					dispatch.returnType, "Expected single bean but found " + beansOfType.size());
+		}
+		Map.Entry entry = (Map.Entry) beansOfType.entrySet().iterator().next();
+		if (generation != -1 && this.beanFactory.isSingleton((String) entry.getKey())) {
+			dispatch.typeTarget = new TypeTarget(entry.getValue(), generation);
+		}
+		return entry.getValue();
+	}
 
-				// Check whether a service id was passed in.
-				String beanName = "";
-				if (args != null && args.length == 1 && args[0] != null) {
-					beanName = args[0].toString();
-				}
+	/**
+	 * Return the bean name generation of the bean factory hierarchy,
+	 * or -1 if it cannot be determined, i.e. if any of the factories
+	 * is not an AbstractBeanFactory.
+	 * @see AbstractBeanFactory#getHierarchyGeneration
+	 */
+	private long getBeanFactoryGeneration() {
+		BeanFactory bf = this.beanFactory;
+		while (bf instanceof AbstractBeanFactory) {
+			bf = ((AbstractBeanFactory) bf).getParentBeanFactory();
+		}
+		return (bf == null ? ((AbstractBeanFactory) this.beanFactory).getHierarchyGeneration() : -1);
+	}
 
-				// Look for explicit serviceId-to-beanName mappings.
-				if (serviceMappings != null) {
-					String mappedName = serviceMappings.getProperty(beanName);
-					if (mappedName != null) {
-						beanName = mappedName;
-					}
-				}
 
-				if (StringUtils.hasLength(beanName)) {
-					// Service locator for a specific bean name.
-					return beanFactory.getBean(beanName, serviceLocatorReturnType);
-				}
-				else {
-					// Service locator for a bean type.
-					return BeanFactoryUtils.beanOfTypeIncludingAncestors(beanFactory, serviceLocatorReturnType);
-				}
-			}
+	/**
+	 * Invocation handler that delegates service locator calls to the bean factory.
+	 */
+	private class ServiceLocatorInvocationHandler implements InvocationHandler {
 
-			catch (NoSuchMethodException ex) {
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			MethodDispatch dispatch = getMethodDispatch(method);
+
+			if (dispatch.interfaceMethod == null) {
 				// It's normal to get here for non service locator interface method calls
 				// (toString, equals, etc). Simply apply call to invocation handler object.
 				try {
@@ -184,6 +224,38 @@ public class ServiceLocatorFactoryBean implements FactoryBean, BeanFactoryAware,
 					throw invEx.getTargetException();
 				}
 			}
+
+			// Check whether the method is a valid service locator.
+			if (!dispatch.validLocator) {
+				throw new UnsupportedOperationException(
+						"May only call methods with signature '<type> xxx()' or '<type> xxx(<idtype> id)' " +
+						"on factory interface, but tried to call: " + dispatch.interfaceMethod);
+			}
+
+			// Check whether a service id was passed in.
+			String beanName = dispatch.defaultBeanName;
+			if (args != null && args.length == 1 && args[0] != null) {
+				String serviceId = args[0].toString();
+				if (serviceId.length() > 0) {
+					beanName = serviceId;
+					// Look for explicit serviceId-to-beanName mappings.
+					if (serviceMappings != null) {
+						String mappedName = serviceMappings.getProperty(serviceId);
+						if (mappedName != null) {
+							beanName = mappedName;
+						}
+					}
+				}
+			}
+
+			if (StringUtils.hasLength(beanName)) {
+				// Service locator for a specific bean name.
+				return beanFactory.getBean(beanName, dispatch.returnType);
+			}
+			else {
+				// Service locator for a bean type.
+				return getBeanOfType(dispatch);
+			}
 		}
 
 		public String toString() {
@@ -191,4 +263,61 @@ public class ServiceLocatorFactoryBean implements FactoryBean, BeanFactoryAware,
 		}
 	}
 
+
+	/**
+	 * Dispatch metadata for an invoked method, determined once per Method.
+	 */
+	private class MethodDispatch {
+
+		/** Corresponding service locator interface method, or null if none */
+		private final Method interfaceMethod;
+
+		private final Class returnType;
+
+		private final boolean validLocator;
+
+		/** Bean name to use if no service id was passed in, or "" for a lookup by type */
+		private final String defaultBeanName;
+
+		/** Cached singleton target for a lookup by type */
+		private volatile TypeTarget typeTarget;
+
+		public MethodDispatch(Method method) {
+			Class[] paramTypes = method.getParameterTypes();
+			Method interfaceMethod = null;
+			try {
+				interfaceMethod = serviceLocatorInterface.getMethod(method.getName(), paramTypes);
+			}
+			catch (NoSuchMethodException ex) {
+				// not a service locator method
+			}
+			this.interfaceMethod = interfaceMethod;
+			this.returnType = (interfaceMethod != null ? interfaceMethod.getReturnType() : null);
+			this.validLocator = (interfaceMethod != null && paramTypes.length <= 1 &&
+					!void.class.equals(this.returnType));
+			String defaultBeanName = null;
+			if (serviceMappings != null) {
+				defaultBeanName = serviceMappings.getProperty("");
+			}
+			this.defaultBeanName = (defaultBeanName != null ? defaultBeanName : "");
+		}
+	}
+
+
+	/**
+	 * Singleton bean located by type, along with the bean name
+	 * generation of the factory hierarchy at the time of lookup.
+	 */
+	private static class TypeTarget {
+
+		private final Object target;
+
+		private final long generation;
+
+		public TypeTarget(Object target, long generation) {
+			this.target = target;
+			this.generation = generation;
+		}
+	}
+
 }
@@ -1,18 +1,20 @@
 
 package org.springframework.beans.factory.support;
 
-import java.beans.PropertyDescriptor;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.BeanWrapper;
@@ -22,6 +24,7 @@ import org.springframework.beans.MutablePropertyValues;
 import org.springframework.beans.PropertyValue;
 import org.springframework.beans.PropertyValues;
 import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.BeanCurrentlyInCreationException;
 import org.springframework.beans.factory.BeanDefinitionStoreException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
@@ -42,6 +45,15 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 	
 	@SuppressWarnings("rawtypes")
 	private final Set ignoreDependencyTypes = new HashSet();
+
+	/** Incremented whenever a dependency type gets ignored */
+	private final AtomicInteger ignoredDependencyTypesGeneration = new AtomicInteger();
+
+	/** Map from bean Class to PropertyDependencyMetadata */
+	private final Map propertyDependencyMetadataCache = new ConcurrentHashMap();
+
+	/** Map from required Class to AutowireCandidates */
+	private final Map autowireCandidateCache = new ConcurrentHashMap();
 	
 	public AbstractAutowireCapableBeanFactory() {
 		super();
@@ -61,11 +73,18 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public void ignoreDependencyType(Class type) {
 		ignoreDependencyTypes.add(type);
+		ignoredDependencyTypesGeneration.incrementAndGet();
 	}
 	
+	/**
+	 * Return the dependency types to ignore for autowiring and dependency checks,
+	 * as unmodifiable Set: Use ignoreDependencyType to register further types,
+	 * which also invalidates the cached dependency metadata.
+	 * @see #ignoreDependencyType
+	 */
 	@SuppressWarnings("rawtypes")
 	public Set getIgnoredDependencyTypes() {
-		return ignoreDependencyTypes;
+		return Collections.unmodifiableSet(ignoreDependencyTypes);
 	}
 
 	// ---------------------------------------------------------------------
@@ -256,6 +275,9 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 	 * to match with the parameters. We don't have the types attached to constructor args,
 	 * so trial and error is the only way to go here. The args array may contain argument
 	 * values passed in programmatically via the overloaded getBean() method.
+	 * <p>The matching method gets cached in the RootBeanDefinition, so subsequent
+	 * creations (e.g. of prototypes) skip the search, as long as the factory class
+	 * and the number of arguments stay the same.
 	 */
 	protected BeanWrapper instantiateUsingFactoryMethod(
 			String beanName, RootBeanDefinition mergedBeanDefinition, Object[] args) throws BeansException {
@@ -292,47 +314,77 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 			factoryClass = mergedBeanDefinition.getBeanClass();
 		}
 
-		// Try all methods with this name to see if they match constructor arguments.
-		for (int i = 0; i < factoryClass.getMethods().length; i++) {
-			Method factoryMethod = factoryClass.getMethods()[i];
-			if (Modifier.isStatic(factoryMethod.getModifiers()) == isStatic &&
-					factoryMethod.getName().equals(mergedBeanDefinition.getFactoryMethodName()) &&
-					factoryMethod.getParameterTypes().length == expectedArgCount) {
+		Method factoryMethodToUse = null;
+		Object[] argsToUse = args;
+
+		// Try the factory method resolved on a previous creation first.
+		RootBeanDefinition.ResolvedInstantiation resolved = mergedBeanDefinition.getResolvedInstantiation();
+		if (resolved != null && resolved.matches(factoryClass, expectedArgCount)) {
+			Method factoryMethod = (Method) resolved.getConstructorOrFactoryMethod();
+			if (args != null) {
+				// Only re-use the cached method if the explicit arguments fit it.
+				if (AutowireUtils.getTypeDifferenceWeight(factoryMethod.getParameterTypes(), args) != Integer.MAX_VALUE) {
+					factoryMethodToUse = factoryMethod;
+				}
+			}
+			else {
+				argsToUse = createArgumentArray(
+						beanName, mergedBeanDefinition, resolvedValues, bw, factoryMethod.getParameterTypes(), false);
+				if (argsToUse != null) {
+					factoryMethodToUse = factoryMethod;
+				}
+				else if (logger.isDebugEnabled()) {
+					// Resolved values don't fit the cached method anymore -> fall back to full search.
+					logger.debug("Cached factory method [" + factoryMethod + "] does not match arguments for bean '" +
+							beanName + "' anymore - searching again");
+				}
+			}
+		}
 
-				Class[] argTypes = factoryMethod.getParameterTypes();
+		if (factoryMethodToUse == null) {
+			// Try all methods with this name to see if they match constructor arguments.
+			Method[] candidates = factoryClass.getMethods();
+			for (int i = 0; i < candidates.length; i++) {
+				Method factoryMethod = candidates[i];
+				if (Modifier.isStatic(factoryMethod.getModifiers()) == isStatic &&
+						factoryMethod.getName().equals(mergedBeanDefinition.getFactoryMethodName()) &&
+						factoryMethod.getParameterTypes().length == expectedArgCount) {
+
+					Class[] argTypes = factoryMethod.getParameterTypes();
 
-				try {
 					// try to create the required arguments
 					if (args == null) {
-						args = createArgumentArray(beanName, mergedBeanDefinition, resolvedValues, bw, argTypes);
+						argsToUse = createArgumentArray(beanName, mergedBeanDefinition, resolvedValues, bw, argTypes, false);
+						if (argsToUse == null) {
+							// If we failed to match this method, keep trying new overloaded factory methods...
+							continue;
+						}
 					}
-				}
-				catch (Exception ex) {
-					// If we failed to match this method, swallow the exception and keep trying new overloaded
-					// factory methods...
-					continue;
-				}
-
-				// If we get here, we found a factory method.
-				Object beanInstance =
-						this.instantiationStrategy.instantiate(
-								mergedBeanDefinition, beanName, this, factoryBean, factoryMethod, args);
 
-				// TODO: If we got to here, we could cache the resolved Method in the RootBeanDefinition
-				// for efficiency on future creation, but that would need to be synchronized.
-
-				bw.setWrappedInstance(beanInstance);
-				if (logger.isDebugEnabled()) {
-					logger.debug("Bean '" + beanName + "' instantiated via factory method '" + factoryMethod + "'");
+					// If we get here, we found a factory method: cache it for future creation.
+					factoryMethodToUse = factoryMethod;
+					mergedBeanDefinition.setResolvedInstantiation(
+							new RootBeanDefinition.ResolvedInstantiation(factoryMethod, factoryClass, expectedArgCount));
+					break;
 				}
-				return bw;
-			}
-		}	// for each method
+			}	// for each method
+		}
+
+		if (factoryMethodToUse == null) {
+			// If we get here, we didn't match any method.
+			throw new BeanDefinitionStoreException(
+					"Cannot find matching factory method '" + mergedBeanDefinition.getFactoryMethodName() +
+					"' on class [" + factoryClass.getName() + "]");
+		}
 
-		// If we get here, we didn't match any method.
-		throw new BeanDefinitionStoreException(
-				"Cannot find matching factory method '" + mergedBeanDefinition.getFactoryMethodName() +
-				"' on class [" + factoryClass.getName() + "]");
+		Object beanInstance =
+				this.instantiationStrategy.instantiate(
+						mergedBeanDefinition, beanName, this, factoryBean, factoryMethodToUse, argsToUse);
+		bw.setWrappedInstance(beanInstance);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Bean '" + beanName + "' instantiated via factory method '" + factoryMethodToUse + "'");
+		}
+		return bw;
 	}
 	
 	protected BeanWrapper autowireConstructor(String beanName, RootBeanDefinition mergedBeanDefinition) throws BeansException {
@@ -344,43 +396,79 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 		if (cargs != null) {
 			minNrOfArgs = resolveConstructorArguments(beanName, mergedBeanDefinition, cargs, resolvedValues);
 		}
-		Constructor[] constructors = mergedBeanDefinition.getBeanClass().getDeclaredConstructors();
-		AutowireUtils.sortConstructors(constructors);
+		Class beanClass = mergedBeanDefinition.getBeanClass();
+		Object[] argumentSignature = getArgumentSignature(resolvedValues);
+		// the beans available for autowiring may change
+		long generation = (mergedBeanDefinition.getResolvedAutowireMode() == RootBeanDefinition.AUTOWIRE_CONSTRUCTOR ?
+				getHierarchyGeneration() : 0);
 		Constructor constructorToUse = null;
 		Object[] argsToUse = null;
-		int minTypeDiffWeight = Integer.MAX_VALUE;
-		for (int i = 0; i < constructors.length; i++) {
-			try {
+
+		// Try the constructor resolved on a previous creation first.
+		RootBeanDefinition.ResolvedInstantiation resolved = mergedBeanDefinition.getResolvedInstantiation();
+		if (resolved != null && resolved.matches(beanClass, minNrOfArgs, argumentSignature, generation)) {
+			Constructor constructor = (Constructor) resolved.getConstructorOrFactoryMethod();
+			argsToUse = createArgumentArray(beanName, mergedBeanDefinition, resolvedValues, bw, constructor.getParameterTypes(), false);
+			if (argsToUse != null) {
+				constructorToUse = constructor;
+			} else if (logger.isDebugEnabled()) {
+				logger.debug("Cached constructor [" + constructor + "] does not match arguments for bean '" + beanName + "' anymore - searching again");
+			}
+		}
+
+		if (constructorToUse == null) {
+			Constructor[] constructors = beanClass.getDeclaredConstructors();
+			AutowireUtils.sortConstructors(constructors);
+			int minTypeDiffWeight = Integer.MAX_VALUE;
+			BeansException lastFailure = null;
+			for (int i = 0; i < constructors.length; i++) {
 				Constructor constructor = constructors[i];
-				if (constructor.getParameterTypes().length < minNrOfArgs) {
-					throw new BeanCreationException(mergedBeanDefinition.getResourceDescription(), beanName, minNrOfArgs + " constructor arguments specified but no matching constructor found in bean '" + beanName + "' (hint: specify index arguments for simple parameters to avoid type ambiguities)");
-				}
-				if (constructorToUse != null && constructorToUse.getParameterTypes().length > constructor.getParameterTypes().length) {
+				Class[] argTypes = constructor.getParameterTypes();
+				if (constructorToUse != null && constructorToUse.getParameterTypes().length > argTypes.length) {
 					// Already found greedy constructor that can be satisfied -> do not look any further, there are only less greedy constructors left.
 					break;
 				}
-				Class[] argTypes = constructor.getParameterTypes();
-				Object[] args = createArgumentArray(beanName, mergedBeanDefinition, resolvedValues, bw, argTypes);
+				if (argTypes.length < minNrOfArgs) {
+					continue;
+				}
+				Object[] args = null;
+				try {
+					// The last constructor reports why it didn't match, in case no constructor does.
+					args = createArgumentArray(beanName, mergedBeanDefinition, resolvedValues, bw, argTypes,
+							i == constructors.length - 1 && constructorToUse == null);
+				}
+				catch (BeansException ex) {
+					lastFailure = ex;
+				}
+				if (args == null) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("Ignoring constructor [" + constructor + "] of bean '" + beanName + "': could not satisfy dependencies");
+					}
+					continue;
+				}
 				int typeDiffWeight = AutowireUtils.getTypeDifferenceWeight(argTypes, args);
 				if (typeDiffWeight < minTypeDiffWeight) {
 					constructorToUse = constructor;
 					argsToUse = args;
 					minTypeDiffWeight = typeDiffWeight;
 				}
-			} catch (BeansException ex) {
-				if (logger.isDebugEnabled()) {
-					logger.debug("Ignoring constructor [" + constructors[i] + "] of bean '" + beanName + "': could not satisfy dependencies", ex);
+			}
+			if (constructorToUse == null && constructors.length > 0) {
+				// All constructors tried: report why the last one didn't match.
+				Constructor lastConstructor = constructors[constructors.length - 1];
+				if (lastConstructor.getParameterTypes().length < minNrOfArgs) {
+					throw new BeanCreationException(mergedBeanDefinition.getResourceDescription(), beanName, minNrOfArgs + " constructor arguments specified but no matching constructor found in bean '" + beanName + "' (hint: specify index arguments for simple parameters to avoid type ambiguities)");
 				}
-				if (i == constructors.length - 1 && constructorToUse == null) {
-					// all constructors tried
-					throw ex;
-				} else {
-					// swallow and try next constructor
+				if (lastFailure != null) {
+					throw lastFailure;
 				}
 			}
-		}
-		if (constructorToUse == null) {
-			throw new BeanCreationException(mergedBeanDefinition.getResourceDescription(), beanName, "Could not resolve matching constructor");
+			if (constructorToUse == null) {
+				throw new BeanCreationException(mergedBeanDefinition.getResourceDescription(), beanName, "Could not resolve matching constructor");
+			}
+			// Cache the constructor for future creation with the same kind of arguments.
+			mergedBeanDefinition.setResolvedInstantiation(
+					new RootBeanDefinition.ResolvedInstantiation(constructorToUse, beanClass, minNrOfArgs, argumentSignature, generation));
 		}
 		Object beanInstance = instantiationStrategy.instantiate(mergedBeanDefinition, beanName, this, constructorToUse, argsToUse);
 		bw.setWrappedInstance(beanInstance);
@@ -390,6 +478,31 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 		return bw;
 	}
 
+	/**
+	 * Determine the signature of the given resolved constructor arguments, which
+	 * a cached constructor resolution needs to match: the Integer index and value
+	 * class of each indexed argument, followed by the value classes of the generic
+	 * arguments. Index keys can't be mistaken for classes, so the signatures of
+	 * different argument layouts never compare equal.
+	 */
+	private Object[] getArgumentSignature(ConstructorArgumentValues resolvedValues) {
+		Map indexedValues = resolvedValues.getIndexedArgumentValues();
+		Set genericValues = resolvedValues.getGenericArgumentValues();
+		Object[] signature = new Object[indexedValues.size() * 2 + genericValues.size()];
+		int i = 0;
+		for (Iterator it = indexedValues.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			Object value = ((ConstructorArgumentValues.ValueHolder) entry.getValue()).getValue();
+			signature[i++] = entry.getKey();
+			signature[i++] = (value != null ? value.getClass() : null);
+		}
+		for (Iterator it = genericValues.iterator(); it.hasNext();) {
+			Object value = ((ConstructorArgumentValues.ValueHolder) it.next()).getValue();
+			signature[i++] = (value != null ? value.getClass() : null);
+		}
+		return signature;
+	}
+
 	/**
 	 * Resolve the constructor arguments for this bean into the resolvedValues object.
 	 * This may involve looking up other beans.
@@ -434,11 +547,14 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 	/**
 	 * Create an array of arguments to invoke a Constructor or static factory method,
 	 * given the resolved constructor arguments values.
+	 * @param raiseExceptions whether to throw an exception if the arguments cannot
+	 * be satisfied, rather than returning null (for trying other candidates)
+	 * @return the arguments, or null if not satisfiable and raiseExceptions is false
 	 */
 	private Object[] createArgumentArray(
 			String beanName, RootBeanDefinition mergedBeanDefinition,
-			ConstructorArgumentValues resolvedValues, BeanWrapper bw, Class[] argTypes)
-	    throws UnsatisfiedDependencyException {
+			ConstructorArgumentValues resolvedValues, BeanWrapper bw, Class[] argTypes, boolean raiseExceptions)
+	    throws BeansException {
 
 		Object[] args = new Object[argTypes.length];
 		Set usedValueHolders = new HashSet(argTypes.length);
@@ -450,15 +566,23 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 				usedValueHolders.add(valueHolder);
 
 				if (bw instanceof BeanWrapperImpl) {
-					// Synchronize if custom editors are registered.
-					// Necessary because PropertyEditors are not thread-safe.
-					if (!getCustomEditors().isEmpty()) {
-						synchronized (getCustomEditors()) {
+					try {
+						// Synchronize if custom editors are registered.
+						// Necessary because PropertyEditors are not thread-safe.
+						if (!getCustomEditors().isEmpty()) {
+							synchronized (getCustomEditors()) {
+								args[j] = ((BeanWrapperImpl) bw).doTypeConversionIfNecessary(valueHolder.getValue(), argTypes[j]);
+							}
+						}
+						else {
 							args[j] = ((BeanWrapperImpl) bw).doTypeConversionIfNecessary(valueHolder.getValue(), argTypes[j]);
 						}
 					}
-					else {
-						args[j] = ((BeanWrapperImpl) bw).doTypeConversionIfNecessary(valueHolder.getValue(), argTypes[j]);
+					catch (BeansException ex) {
+						if (raiseExceptions) {
+							throw ex;
+						}
+						return null;
 					}
 				}
 				else {
@@ -467,6 +591,9 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 					if (argTypes[j].isInstance(valueHolder.getValue())) {
 						args[j] = valueHolder.getValue();
 					}
+					else if (!raiseExceptions) {
+						return null;
+					}
 					else {
 						throw new UnsatisfiedDependencyException(
 								mergedBeanDefinition.getResourceDescription(), beanName, j, argTypes[j],
@@ -479,12 +606,31 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 
 			else {
 				if (mergedBeanDefinition.getResolvedAutowireMode() != RootBeanDefinition.AUTOWIRE_CONSTRUCTOR) {
+					if (!raiseExceptions) {
+						return null;
+					}
 					throw new UnsatisfiedDependencyException(
 							mergedBeanDefinition.getResourceDescription(), beanName, j, argTypes[j],
 							"Did you specify the correct bean references as generic constructor arguments?");
 				}
-				Map matchingBeans = findMatchingBeans(argTypes[j]);
+				Map matchingBeans = null;
+				try {
+					matchingBeans = findAutowireCandidates(argTypes[j]);
+				}
+				catch (BeansException ex) {
+					// Failed to create a candidate bean.
+					if (raiseExceptions) {
+						throw ex;
+					}
+					if (logger.isDebugEnabled()) {
+						logger.debug("Could not determine beans of type [" + argTypes[j].getName() + "] for autowiring constructor of bean '" + beanName + "'", ex);
+					}
+					return null;
+				}
 				if (matchingBeans == null || matchingBeans.size() != 1) {
+					if (!raiseExceptions) {
+						return null;
+					}
 					int matchingBeansCount = (matchingBeans != null ? matchingBeans.size() : 0);
 					throw new UnsatisfiedDependencyException(
 							mergedBeanDefinition.getResourceDescription(), beanName, j, argTypes[j],
@@ -581,7 +727,7 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 			String propertyName = propertyNames[i];
 			// look for a matching type
 			Class requiredType = bw.getPropertyDescriptor(propertyName).getPropertyType();
-			Map matchingBeans = findMatchingBeans(requiredType);
+			Map matchingBeans = findAutowireCandidates(requiredType);
 			if (matchingBeans != null && matchingBeans.size() == 1) {
 				String autowiredBeanName = (String) matchingBeans.keySet().iterator().next();
 				Object autowiredBean = matchingBeans.values().iterator().next();
@@ -620,19 +766,32 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 	 * @see org.springframework.beans.BeanUtils#isSimpleProperty
 	 */
 	protected String[] unsatisfiedObjectProperties(RootBeanDefinition mergedBeanDefinition, BeanWrapper bw) {
-		Set result = new TreeSet();
 		PropertyValues pvs = mergedBeanDefinition.getPropertyValues();
-		PropertyDescriptor[] pds = bw.getPropertyDescriptors();
-		Set ignoreTypes = getIgnoredDependencyTypes();
-		for (int i = 0; i < pds.length; i++) {
-			if (pds[i].getWriteMethod() != null &&
-			    !ignoreTypes.contains(pds[i].getPropertyType()) &&
-			    !pvs.contains(pds[i].getName()) &&
-					!BeanUtils.isSimpleProperty(pds[i].getPropertyType())) {
-				result.add(pds[i].getName());
-			}
+		PropertyDependencyMetadata metadata = getPropertyDependencyMetadata(bw);
+		PropertyValue[] pvArray = pvs.getPropertyValues();
+		// Try the result determined on a previous creation first.
+		RootBeanDefinition.ResolvedUnsatisfiedProperties resolved = mergedBeanDefinition.getResolvedUnsatisfiedProperties();
+		if (resolved == null || !resolved.matches(metadata, pvArray)) {
+			resolved = new RootBeanDefinition.ResolvedUnsatisfiedProperties(
+					metadata, pvArray, metadata.getUnsatisfiedObjectProperties(pvs));
+			mergedBeanDefinition.setResolvedUnsatisfiedProperties(resolved);
 		}
-		return (String[]) result.toArray(new String[result.size()]);
+		return resolved.getPropertyNames().clone();
+	}
+
+	/**
+	 * Return the dependency metadata for the class of the given BeanWrapper,
+	 * computing it on first access and whenever dependency types got ignored.
+	 */
+	private PropertyDependencyMetadata getPropertyDependencyMetadata(BeanWrapper bw) {
+		int generation = this.ignoredDependencyTypesGeneration.get();
+		PropertyDependencyMetadata metadata =
+				(PropertyDependencyMetadata) this.propertyDependencyMetadataCache.get(bw.getWrappedClass());
+		if (metadata == null || !metadata.isValid(generation)) {
+			metadata = new PropertyDependencyMetadata(bw.getPropertyDescriptors(), getIgnoredDependencyTypes(), generation);
+			this.propertyDependencyMetadataCache.put(bw.getWrappedClass(), metadata);
+		}
+		return metadata;
 	}
 
 	protected void dependencyCheck(String beanName, RootBeanDefinition mergedBeanDefinition, BeanWrapper bw, PropertyValues pvs) throws UnsatisfiedDependencyException {
@@ -640,16 +799,9 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 		if (dependencyCheck == RootBeanDefinition.DEPENDENCY_CHECK_NONE) {
 			return;
 		}
-		Set ignoreTypes = getIgnoredDependencyTypes();
-		PropertyDescriptor[] pds = bw.getPropertyDescriptors();
-		for (int i = 0; i < pds.length; i++) {
-			if (pds[i].getWriteMethod() != null && !ignoreTypes.contains(pds[i].getPropertyType()) && !pvs.contains(pds[i].getName())) {
-				boolean isSimple = BeanUtils.isSimpleProperty(pds[i].getPropertyType());
-				boolean unsatisfied = (dependencyCheck == RootBeanDefinition.DEPENDENCY_CHECK_ALL) || (isSimple && dependencyCheck == RootBeanDefinition.DEPENDENCY_CHECK_SIMPLE) || (!isSimple && dependencyCheck == RootBeanDefinition.DEPENDENCY_CHECK_OBJECTS);
-				if (unsatisfied) {
-					throw new UnsatisfiedDependencyException(mergedBeanDefinition.getResourceDescription(), beanName, pds[i].getName(), "Set this property value or disable dependency checking for this bean.");
-				}
-			}
+		String unsatisfiedPropertyName = getPropertyDependencyMetadata(bw).getFirstUnsatisfiedProperty(dependencyCheck, pvs);
+		if (unsatisfiedPropertyName != null) {
+			throw new UnsatisfiedDependencyException(mergedBeanDefinition.getResourceDescription(), beanName, unsatisfiedPropertyName, "Set this property value or disable dependency checking for this bean.");
 		}
 	}
 
@@ -874,6 +1026,126 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 	// Abstract method to be implemented by concrete subclasses
 	//---------------------------------------------------------------------
 
+	/**
+	 * Find the beans that match the required type for autowiring.
+	 * <p>Determines the names of the candidate beans first, if supported by
+	 * findMatchingBeanNames, and only instantiates the single candidate, if any.
+	 * The names are cached per required type until beans get registered in the
+	 * factory hierarchy, except for FactoryBeans whose object type could not be
+	 * determined, which get checked again on each lookup. Singletons that are
+	 * currently in creation don't count, like with findMatchingBeans.
+	 * <p>In case of multiple candidates, falls back to findMatchingBeans, which
+	 * instantiates all of them and skips the ones that cannot be created because
+	 * of a circular reference, possibly leaving a single match.
+	 * @param requiredType the type of the beans to look up
+	 * @return a Map of bean names and bean instances that match the required type
+	 * @see #findMatchingBeanNames
+	 * @see #findMatchingBeans
+	 */
+	private Map findAutowireCandidates(Class requiredType) throws BeansException {
+		String[] candidateNames = getAutowireCandidateNames(requiredType);
+		if (candidateNames == null) {
+			return findMatchingBeans(requiredType);
+		}
+		List beanNames = new ArrayList(candidateNames.length);
+		for (int i = 0; i < candidateNames.length; i++) {
+			// A singleton in creation indicates a circular reference when autowiring constructors.
+			// We want to find matches other than the currently created bean itself.
+			if (!isSingletonCurrentlyInCreation(candidateNames[i])) {
+				beanNames.add(candidateNames[i]);
+			}
+		}
+		if (beanNames.isEmpty()) {
+			return Collections.EMPTY_MAP;
+		}
+		if (beanNames.size() > 1) {
+			return findMatchingBeans(requiredType);
+		}
+		String beanName = (String) beanNames.get(0);
+		try {
+			return Collections.singletonMap(beanName, getBean(beanName));
+		}
+		catch (BeanCreationException ex) {
+			if (ex.contains(BeanCurrentlyInCreationException.class)) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Ignoring match to currently created bean '" + beanName + "'", ex);
+				}
+				return Collections.EMPTY_MAP;
+			}
+			throw ex;
+		}
+	}
+
+	private String[] getAutowireCandidateNames(Class requiredType) {
+		// Only cache if all bean registrations in the hierarchy are tracked.
+		BeanFactory ancestor = getParentBeanFactory();
+		while (ancestor instanceof AbstractBeanFactory) {
+			ancestor = ((AbstractBeanFactory) ancestor).getParentBeanFactory();
+		}
+		boolean cacheable = (ancestor == null);
+		long generation = getHierarchyGeneration();
+		if (cacheable) {
+			AutowireCandidates candidates = (AutowireCandidates) this.autowireCandidateCache.get(requiredType);
+			if (candidates != null && candidates.generation == generation) {
+				return addUndeterminedMatches(candidates, requiredType);
+			}
+		}
+		String[] beanNames = findMatchingBeanNames(requiredType);
+		if (cacheable && beanNames != null) {
+			// FactoryBeans in creation or not initialized yet might expose a matching type later on
+			String[] undeterminedBeanNames = findUndeterminableBeanNames();
+			this.autowireCandidateCache.put(requiredType,
+					new AutowireCandidates(beanNames, undeterminedBeanNames, generation));
+		}
+		return beanNames;
+	}
+
+	private String[] addUndeterminedMatches(AutowireCandidates candidates, Class requiredType) {
+		if (candidates.undeterminedBeanNames.length == 0) {
+			return candidates.beanNames;
+		}
+		List beanNames = new ArrayList(candidates.beanNames.length + candidates.undeterminedBeanNames.length);
+		for (int i = 0; i < candidates.beanNames.length; i++) {
+			beanNames.add(candidates.beanNames[i]);
+		}
+		for (int i = 0; i < candidates.undeterminedBeanNames.length; i++) {
+			Class beanType = getType(candidates.undeterminedBeanNames[i]);
+			if (beanType != null && requiredType.isAssignableFrom(beanType)) {
+				beanNames.add(candidates.undeterminedBeanNames[i]);
+			}
+		}
+		return (String[]) beanNames.toArray(new String[beanNames.size()]);
+	}
+
+	/**
+	 * Find the names of the beans that match the required type, without
+	 * instantiating them (except for FactoryBeans to determine their object type).
+	 * Called by autowiring, allowing to instantiate only the bean that gets injected.
+	 * <p>Default implementation returns null, indicating that bean names by type
+	 * cannot be determined, with autowiring falling back to findMatchingBeans.
+	 * @param requiredType the type of the beans to look up
+	 * @return the names of the matching beans, or null if not supported
+	 * @see #findMatchingBeans
+	 */
+	protected String[] findMatchingBeanNames(Class requiredType) {
+		return null;
+	}
+
+	/**
+	 * Find the names of the FactoryBeans whose object type cannot be determined
+	 * at this point, in this factory and its ancestors: e.g. because they are
+	 * currently in creation, or not initialized enough to expose their object type.
+	 * Called by autowiring after findMatchingBeanNames, to check these beans
+	 * again on subsequent lookups instead of relying on the cached result.
+	 * <p>Default implementation returns an empty array, to be overridden
+	 * along with findMatchingBeanNames.
+	 * @return the names of the beans, without factory dereference prefix
+	 * @see #findMatchingBeanNames
+	 */
+	protected String[] findUndeterminableBeanNames() {
+		return new String[0];
+	}
+
 	/**
 	 * Find bean instances that match the required type. Called by autowiring.
 	 * If a subclass cannot obtain information about bean names by type,
@@ -887,4 +1159,26 @@ public abstract class AbstractAutowireCapableBeanFactory extends AbstractBeanFac
 	 */
 	protected abstract Map findMatchingBeans(Class requiredType) throws BeansException;
 
+
+
+	/**
+	 * Names of the beans that match a required type, along with the names
+	 * of the beans whose type could not be determined and the hierarchy
+	 * generation at the time of lookup.
+	 */
+	private static class AutowireCandidates {
+
+		private final String[] beanNames;
+
+		private final String[] undeterminedBeanNames;
+
+		private final long generation;
+
+		public AutowireCandidates(String[] beanNames, String[] undeterminedBeanNames, long generation) {
+			this.beanNames = beanNames;
+			this.undeterminedBeanNames = undeterminedBeanNames;
+			this.generation = generation;
+		}
+	}
+
 }
@@ -7,12 +7,26 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -45,6 +59,9 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 	
 	private static final Object CURRENTLY_IN_CREATION = new Object();
 
+	/** Number of beans with the longest destruction times to log */
+	private static final int SLOWEST_DESTROYERS_TO_REPORT = 5;
+
 	private BeanFactory parentBeanFactory = null;
 	@SuppressWarnings("rawtypes")
 	private Map customEditors             = new HashMap();
@@ -58,10 +75,29 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 	private final Map aliasMap         = Collections.synchronizedMap(new HashMap());
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private final Map singletonCache   = Collections.synchronizedMap(new HashMap());
+	/** Map from bean name to List of DisposableBeans, in registration order */
 	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private final Map disposableBeans  = Collections.synchronizedMap(new HashMap());
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private final Map dependentBeanMap = Collections.synchronizedMap(new HashMap());
+	private final Map disposableBeans  = Collections.synchronizedMap(new LinkedHashMap());
+
+	private final BeanDependencyGraph dependencyGraph = new BeanDependencyGraph();
+
+	private boolean parallelDestruction = false;
+
+	private int destructionThreads = 4;
+
+	private long destructionTimeout = 0;
+
+	/** Map from bean name to BeanOwner, for names owned by an ancestor factory */
+	private final Map beanOwnerCache = new ConcurrentHashMap();
+
+	/**
+	 * Source of bean name generations, shared by all factories:
+	 * A new generation is higher than any generation issued before.
+	 */
+	private static final AtomicLong generationCounter = new AtomicLong();
+
+	/** Renewed whenever bean names get registered or removed in this factory */
+	private volatile long beanNameGeneration = generationCounter.incrementAndGet();
 	
 	public AbstractBeanFactory() {
 		
@@ -103,6 +139,15 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 			bean = getObjectForSharedInstance(name, sharedInstance);
 		} else {
 			// Check if bean definition exists in this factory.
+			if (this.parentBeanFactory != null && !containsBeanDefinition(beanName)) {
+				// Not found -> check owning ancestor, without NoSuchBeanDefinitionException.
+				BeanFactory ancestor = getAncestorFor(name);
+				if (ancestor instanceof AbstractBeanFactory) {
+					return ((AbstractBeanFactory) ancestor).getBean(name, requiredType, args);
+				} else if (args == null) {
+					return ancestor.getBean(name, requiredType);
+				}
+			}
 			RootBeanDefinition mergedBeanDefinition = null;
 			try {
 				mergedBeanDefinition = getMergedBeanDefinition(beanName, false);
@@ -129,8 +174,10 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 						}
 						singletonCache.put(beanName, CURRENTLY_IN_CREATION);
 						try {
+							long startTime = System.currentTimeMillis();
 							sharedInstance = createBean(beanName, mergedBeanDefinition, args);
 							singletonCache.put(beanName, sharedInstance);
+							dependencyGraph.registerCreation(beanName, System.currentTimeMillis() - startTime);
 						} catch (BeansException ex) {
 							singletonCache.remove(beanName);
 							throw ex;
@@ -159,9 +206,9 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 			return true;
 		}
 		else {
-			// Not found -> check parent.
+			// Not found -> check owning ancestor.
 			if (this.parentBeanFactory != null) {
-				return this.parentBeanFactory.containsBean(name);
+				return getAncestorFor(name).containsBean(name);
 			}
 			else {
 				return false;
@@ -171,6 +218,10 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 
 	public boolean isSingleton(String name) throws NoSuchBeanDefinitionException {
 		String beanName = transformedBeanName(name);
+		if (this.parentBeanFactory != null && !containsLocalBean(beanName)) {
+			// Not found -> check owning ancestor, without NoSuchBeanDefinitionException.
+			return getAncestorFor(name).isSingleton(name);
+		}
 		try {
 			Class beanClass = null;
 			boolean singleton = true;
@@ -210,6 +261,10 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 
 	public Class getType(String name) throws NoSuchBeanDefinitionException {
 		String beanName = transformedBeanName(name);
+		if (this.parentBeanFactory != null && !containsLocalBean(beanName)) {
+			// Not found -> check owning ancestor, without NoSuchBeanDefinitionException.
+			return getAncestorFor(name).getType(name);
+		}
 		try {
 			Class beanClass = null;
 
@@ -273,9 +328,9 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 			return (String[]) aliases.toArray(new String[aliases.size()]);
 		}
 		else {
-			// Not found -> check parent.
+			// Not found -> check owning ancestor.
 			if (this.parentBeanFactory != null) {
-				return this.parentBeanFactory.getAliases(name);
+				return getAncestorFor(name).getAliases(name);
 			}
 			throw new NoSuchBeanDefinitionException(beanName, toString());
 		}
@@ -297,6 +352,91 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 
 	public void setParentBeanFactory(BeanFactory parentBeanFactory) {
 		this.parentBeanFactory = parentBeanFactory;
+		invalidateBeanOwnerCache();
+	}
+
+	/**
+	 * Return the ancestor factory to ask for the given bean name, which is
+	 * not defined in this factory: the nearest ancestor that contains the bean,
+	 * or the root factory if none does. Remembers the owning ancestor per name,
+	 * as long as no bean names get registered or removed anywhere in the chain.
+	 * @param name the name of the bean, as requested
+	 * @return the ancestor factory (never null if there is a parent factory)
+	 * @see #invalidateBeanOwnerCache
+	 */
+	private BeanFactory getAncestorFor(String name) {
+		// read the generation before walking the chain, to not cache a stale owner
+		long generation = getHierarchyGeneration();
+		BeanOwner owner = (BeanOwner) this.beanOwnerCache.get(name);
+		if (owner != null && owner.generation == generation) {
+			return owner.beanFactory;
+		}
+		BeanFactory ancestor = this.parentBeanFactory;
+		while (ancestor instanceof AbstractBeanFactory) {
+			AbstractBeanFactory abf = (AbstractBeanFactory) ancestor;
+			if (abf.containsLocalBean(abf.transformedBeanName(name))) {
+				this.beanOwnerCache.put(name, new BeanOwner(abf, generation));
+				return abf;
+			}
+			if (abf.parentBeanFactory == null) {
+				// not found anywhere -> let the root factory handle it (not cached)
+				return abf;
+			}
+			ancestor = abf.parentBeanFactory;
+		}
+		// some other kind of factory -> let it check itself
+		return ancestor;
+	}
+
+	/**
+	 * Return whether the given singleton is currently in creation
+	 * in this factory, or in the AbstractBeanFactory ancestor that
+	 * defines it if not defined in this factory.
+	 */
+	boolean isSingletonCurrentlyInCreation(String name) {
+		String beanName = transformedBeanName(name);
+		if (this.parentBeanFactory != null && !containsLocalBean(beanName)) {
+			BeanFactory ancestor = getAncestorFor(name);
+			return (ancestor instanceof AbstractBeanFactory &&
+					((AbstractBeanFactory) ancestor).isSingletonCurrentlyInCreation(name));
+		}
+		return (this.singletonCache.get(beanName) == CURRENTLY_IN_CREATION);
+	}
+
+	/**
+	 * Return the latest bean name generation of this factory and its
+	 * AbstractBeanFactory ancestors. As generations are unique across all
+	 * factories, and replacing the parent of a factory renews its generation,
+	 * this value changes whenever the bean names or the parent of any
+	 * factory in the chain change, and never returns to an earlier value.
+	 * <p>Allows for caching the results of lookups by name or type,
+	 * as long as all ancestors are AbstractBeanFactories too.
+	 */
+	public long getHierarchyGeneration() {
+		long generation = 0;
+		for (BeanFactory bf = this; bf instanceof AbstractBeanFactory; bf = ((AbstractBeanFactory) bf).parentBeanFactory) {
+			generation = Math.max(generation, ((AbstractBeanFactory) bf).beanNameGeneration);
+		}
+		return generation;
+	}
+
+	/**
+	 * Invalidate cached owners of bean names, in this factory and in all
+	 * its child factories. To be called whenever bean names get registered
+	 * or removed in this factory.
+	 */
+	protected void invalidateBeanOwnerCache() {
+		this.beanNameGeneration = generationCounter.incrementAndGet();
+		this.beanOwnerCache.clear();
+	}
+
+	/**
+	 * Return whether this factory contains a singleton instance or
+	 * a bean definition with the given (transformed) name, ignoring
+	 * ancestor factories.
+	 */
+	private boolean containsLocalBean(String beanName) {
+		return (this.singletonCache.containsKey(beanName) || containsBeanDefinition(beanName));
 	}
 
 	public void registerCustomEditor(Class requiredType, PropertyEditor propertyEditor) {
@@ -349,6 +489,7 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 			}
 			aliasMap.put(alias, beanName);
 		}
+		invalidateBeanOwnerCache();
 	}
 
 	public void registerSingleton(String beanName, Object singletonObject) throws BeanDefinitionStoreException {
@@ -361,6 +502,7 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 			}
 			addSingleton(beanName, singletonObject);
 		}
+		invalidateBeanOwnerCache();
 	}
 	
 	protected void addSingleton(String beanName, Object singletonObject) {
@@ -371,8 +513,25 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 	
 	protected void removeSingleton(String beanName) {
 		Assert.hasText(beanName, "Bean name must not be empty");
-		singletonCache.remove(beanName);
-		disposableBeans.remove(beanName);
+		Object singletonObject = singletonCache.remove(beanName);
+		// Only remove the disposable registered for the singleton itself,
+		// not the ones of inner beans that share its name.
+		synchronized (disposableBeans) {
+			List beans = (List)disposableBeans.get(beanName);
+			if (beans != null) {
+				for (Iterator it = beans.iterator(); it.hasNext(); ) {
+					Object disposableBean = it.next();
+					if (disposableBean == singletonObject || (disposableBean instanceof DisposableBeanAdapter &&
+							((DisposableBeanAdapter)disposableBean).bean == singletonObject)) {
+						it.remove();
+					}
+				}
+				if (beans.isEmpty()) {
+					disposableBeans.remove(beanName);
+				}
+			}
+		}
+		invalidateBeanOwnerCache();
 	}
 	
 	public int getSingletonCount() {
@@ -394,11 +553,78 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 			logger.info("Destroying singletons in factory {" + this + "}");
 		}
 		singletonCache.clear();
+		invalidateBeanOwnerCache();
+		String[] beanNames = null;
 		synchronized (disposableBeans) {
-			for (Iterator it = new HashSet(disposableBeans.keySet()).iterator(); it.hasNext(); ) {
-				destroyDisposableBean((String)it.next());
+			beanNames = (String[])disposableBeans.keySet().toArray(new String[disposableBeans.size()]);
+		}
+		Map destructionTimes = new HashMap(beanNames.length * 2);
+		if (parallelDestruction || destructionTimeout > 0) {
+			destroyConcurrently(beanNames, (parallelDestruction ? destructionThreads : 1), destructionTimes);
+		} else {
+			String[] destructionOrder = dependencyGraph.getDestructionOrder(beanNames);
+			for (int i = 0; i < destructionOrder.length; i++) {
+				long startTime = System.currentTimeMillis();
+				destroyDisposableBean(destructionOrder[i]);
+				destructionTimes.put(destructionOrder[i], new Long(System.currentTimeMillis() - startTime));
 			}
 		}
+		dependencyGraph.clear();
+		logSlowestDestroyers(destructionTimes);
+	}
+
+	/**
+	 * Set whether destroySingletons should destroy independent beans
+	 * concurrently, using up to "destructionThreads" threads. Dependent beans
+	 * always get destroyed before the beans they depend on.
+	 * Default is false, destroying all singletons in the calling thread.
+	 * @see #setDestructionThreads
+	 * @see BeanDependencyGraph#getDestructionPrerequisites
+	 */
+	public void setParallelDestruction(boolean parallelDestruction) {
+		this.parallelDestruction = parallelDestruction;
+	}
+
+	public boolean isParallelDestruction() {
+		return parallelDestruction;
+	}
+
+	/**
+	 * Set the maximum number of beans to destroy concurrently
+	 * in case of parallel destruction. Default is 4.
+	 * @see #setParallelDestruction
+	 */
+	public void setDestructionThreads(int destructionThreads) {
+		Assert.isTrue(destructionThreads > 0, "destructionThreads must be positive");
+		this.destructionThreads = destructionThreads;
+	}
+
+	public int getDestructionThreads() {
+		return destructionThreads;
+	}
+
+	/**
+	 * Set the maximum time in milliseconds to wait for the destruction
+	 * callbacks of a single bean. Once exceeded, the destroying thread gets
+	 * interrupted and abandoned, and destruction proceeds with the next beans.
+	 * Default is 0, waiting as long as it takes.
+	 * <p>Destruction callbacks run in separate threads if a timeout is set,
+	 * one at a time unless parallel destruction is active.
+	 */
+	public void setDestructionTimeout(long destructionTimeout) {
+		this.destructionTimeout = destructionTimeout;
+	}
+
+	public long getDestructionTimeout() {
+		return destructionTimeout;
+	}
+
+	/**
+	 * Return the dependency graph between the beans of this factory,
+	 * for example to analyze the startup critical path.
+	 */
+	public BeanDependencyGraph getDependencyGraph() {
+		return dependencyGraph;
 	}
 
 	//---------------------------------------------------------------------
@@ -417,6 +643,10 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 	}
 	
 	protected RootBeanDefinition getMergedBeanDefinition(String beanName, boolean includingAncestors) throws BeansException {
+		if (includingAncestors && !containsBeanDefinition(beanName) && getParentBeanFactory() instanceof AbstractBeanFactory) {
+			// Not found -> check parent, without NoSuchBeanDefinitionException.
+			return ((AbstractBeanFactory)getParentBeanFactory()).getMergedBeanDefinition(beanName, true);
+		}
 		try {
 			return getMergedBeanDefinition(beanName, getBeanDefinition(beanName));
 		} catch (NoSuchBeanDefinitionException ex) {
@@ -534,15 +764,8 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 			final boolean isDisposableBean = (bean instanceof DisposableBean);
 			final boolean hasDestroyMethod = (mergedBeanDefinition.getDestroyMethodName() != null);
 			if (isDisposableBean || hasDestroyMethod || hasDestructionAwareBeanPostProcessors()) {
-				// Determine unique key for registration of disposable bean
-				int counter = 1;
-				String id = beanName;
-				while (disposableBeans.containsKey(id)) {
-					counter++;
-					id = beanName + "#" + counter;
-				}
 				// Register a DisposableBean implementation that performs all destruction work for the given bean: DestructionAwareBeanPostProcessors, DisposableBean interface, custom destroy method.
-				registerDisposableBean(id, new DisposableBean() {
+				registerDisposableBean(beanName, new DisposableBeanAdapter(bean) {
 					public void destroy() throws Exception {
 						if (hasDestructionAwareBeanPostProcessors()) {
 							if (logger.isDebugEnabled()) {
@@ -581,24 +804,164 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 	}
 	
 	protected void registerDisposableBean(String beanName, DisposableBean bean) {
-		disposableBeans.put(beanName, bean);
+		// Several beans may share a name, for example inner beans.
+		synchronized (disposableBeans) {
+			List beans = (List)disposableBeans.get(beanName);
+			if (beans == null) {
+				beans = new ArrayList(1);
+				disposableBeans.put(beanName, beans);
+			}
+			beans.add(bean);
+		}
 	}
 	
 	protected void registerDependentBean(String beanName, String dependentBeanName) {
-		synchronized (dependentBeanMap) {
-			List dependencies = (List)dependentBeanMap.get(beanName);
-			if (dependencies == null) {
-				dependencies = new LinkedList();
-				dependentBeanMap.put(beanName, dependencies);
+		dependencyGraph.registerDependency(beanName, dependentBeanName);
+	}
+	
+	private void destroyDisposableBean(String beanName) {
+		List beans = (List)disposableBeans.remove(beanName);
+		if (beans != null) {
+			for (int i = beans.size() - 1; i >= 0; i--) {
+				destroyBean(beanName, beans.get(i));
 			}
-			dependencies.add(dependentBeanName);
 		}
 	}
 	
-	private void destroyDisposableBean(String beanName) {
-		Object disposableBean = disposableBeans.remove(beanName);
-		if (disposableBean != null) {
-			destroyBean(beanName, disposableBean);
+	/**
+	 * Destroy the given beans in separate threads, as soon as all beans that
+	 * need to be destroyed first are done (or timed out).
+	 */
+	private void destroyConcurrently(String[] beanNames, int threads, Map destructionTimes) {
+		Map prerequisites = dependencyGraph.getDestructionPrerequisites(beanNames);
+		// Index the beans that are waiting for each bean to be destroyed.
+		Map pendingCounts = new HashMap(beanNames.length * 2);
+		Map waitingBeans = new HashMap(beanNames.length * 2);
+		// Ready beans by position in the destruction order, to destroy them in that order.
+		Map positions = new HashMap(beanNames.length * 2);
+		SortedMap readyBeans = new TreeMap();
+		for (Iterator it = prerequisites.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry entry = (Map.Entry)it.next();
+			String[] beansToDestroyFirst = (String[])entry.getValue();
+			Integer position = new Integer(positions.size());
+			positions.put(entry.getKey(), position);
+			if (beansToDestroyFirst.length == 0) {
+				readyBeans.put(position, entry.getKey());
+			}
+			pendingCounts.put(entry.getKey(), new Integer(beansToDestroyFirst.length));
+			for (int i = 0; i < beansToDestroyFirst.length; i++) {
+				List waiting = (List)waitingBeans.get(beansToDestroyFirst[i]);
+				if (waiting == null) {
+					waiting = new LinkedList();
+					waitingBeans.put(beansToDestroyFirst[i], waiting);
+				}
+				waiting.add(entry.getKey());
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Destroying " + prerequisites.size() + " singletons using up to " + threads + " threads");
+		}
+		ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private int threadCount = 0;
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "singleton-destroyer-" + (++threadCount));
+				// Don't let a hanging destruction callback keep the VM alive.
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		CompletionService completionService = new ExecutorCompletionService(executor);
+		Map runningTasks = new HashMap();
+		int remaining = prerequisites.size();
+		try {
+			while (remaining > 0) {
+				while (!readyBeans.isEmpty() && runningTasks.size() < threads) {
+					DestructionTask task = new DestructionTask((String)readyBeans.remove(readyBeans.firstKey()));
+					runningTasks.put(completionService.submit(task), task);
+				}
+				if (runningTasks.isEmpty()) {
+					break;
+				}
+				Future future = null;
+				if (destructionTimeout > 0) {
+					future = completionService.poll(getNextDestructionDeadline(runningTasks) - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+					if (future == null) {
+						long now = System.currentTimeMillis();
+						for (Iterator it = new ArrayList(runningTasks.keySet()).iterator(); it.hasNext(); ) {
+							Future runningFuture = (Future)it.next();
+							DestructionTask task = (DestructionTask)runningTasks.get(runningFuture);
+							if (now - task.startTime >= destructionTimeout) {
+								logger.warn("Destruction of bean with name '" + task.beanName + "' timed out after " + destructionTimeout + " ms");
+								runningFuture.cancel(true);
+								runningTasks.remove(runningFuture);
+								destructionTimes.put(task.beanName, new Long(now - task.startTime));
+								releaseWaitingBeans(task.beanName, waitingBeans, pendingCounts, positions, readyBeans);
+								remaining--;
+							}
+						}
+						continue;
+					}
+				} else {
+					future = completionService.take();
+				}
+				// Cancelled tasks get reported as well, already handled on timeout.
+				DestructionTask task = (DestructionTask)runningTasks.remove(future);
+				if (task != null) {
+					destructionTimes.put(task.beanName, future.get());
+					releaseWaitingBeans(task.beanName, waitingBeans, pendingCounts, positions, readyBeans);
+					remaining--;
+				}
+			}
+		} catch (InterruptedException ex) {
+			logger.warn("Interrupted while destroying singletons - abandoning " + remaining + " beans");
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			// Cannot happen: destroyBean catches all exceptions.
+			logger.error("Destruction of singletons failed", ex.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private long getNextDestructionDeadline(Map runningTasks) {
+		long deadline = Long.MAX_VALUE;
+		for (Iterator it = runningTasks.values().iterator(); it.hasNext(); ) {
+			deadline = Math.min(deadline, ((DestructionTask)it.next()).startTime + destructionTimeout);
+		}
+		return deadline;
+	}
+
+	private void releaseWaitingBeans(String beanName, Map waitingBeans, Map pendingCounts, Map positions, SortedMap readyBeans) {
+		List waiting = (List)waitingBeans.get(beanName);
+		if (waiting != null) {
+			for (Iterator it = waiting.iterator(); it.hasNext(); ) {
+				String waitingBeanName = (String)it.next();
+				int pendingCount = ((Integer)pendingCounts.get(waitingBeanName)).intValue() - 1;
+				pendingCounts.put(waitingBeanName, new Integer(pendingCount));
+				if (pendingCount == 0) {
+					readyBeans.put(positions.get(waitingBeanName), waitingBeanName);
+				}
+			}
+		}
+	}
+
+	private void logSlowestDestroyers(Map destructionTimes) {
+		if (logger.isInfoEnabled() && !destructionTimes.isEmpty()) {
+			List entries = new ArrayList(destructionTimes.entrySet());
+			Collections.sort(entries, new Comparator() {
+				public int compare(Object o1, Object o2) {
+					return ((Long)((Map.Entry)o2).getValue()).compareTo((Long)((Map.Entry)o1).getValue());
+				}
+			});
+			StringBuffer sb = new StringBuffer("Slowest destroyers in factory {" + this + "}: ");
+			for (int i = 0; i < entries.size() && i < SLOWEST_DESTROYERS_TO_REPORT; i++) {
+				Map.Entry entry = (Map.Entry)entries.get(i);
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append(entry.getKey()).append(" (").append(entry.getValue()).append(" ms)");
+			}
+			logger.info(sb.toString());
 		}
 	}
 	
@@ -606,12 +969,10 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 		if (logger.isDebugEnabled()) {
 			logger.debug("Retrieving dependent beans for bean '" + beanName + "'");
 		}
-		List dependencies = (List)dependentBeanMap.remove(beanName);
-		if (dependencies != null) {
-			for (Iterator it = dependencies.iterator(); it.hasNext(); ) {
-				String dependentBeanName = (String)it.next();
-				destroyDisposableBean(dependentBeanName);
-			}
+		// Usually destroyed already, when destroying in topological order.
+		String[] dependentBeanNames = dependencyGraph.getDependentBeans(beanName);
+		for (int i = 0; i < dependentBeanNames.length; i++) {
+			destroyDisposableBean(dependentBeanNames[i]);
 		}
 		if (bean instanceof DisposableBean) {
 			try {
@@ -661,4 +1022,55 @@ public abstract class AbstractBeanFactory implements ConfigurableBeanFactory {
 
 	protected abstract Object createBean(String beanName, RootBeanDefinition mergedBeanDefinition, Object[] args) throws BeansException;
 
+
+	/**
+	 * Destroys the singletons registered under one bean name,
+	 * returning the time taken in milliseconds.
+	 */
+	private class DestructionTask implements Callable {
+
+		private final String beanName;
+
+		private final long startTime = System.currentTimeMillis();
+
+		public DestructionTask(String beanName) {
+			this.beanName = beanName;
+		}
+
+		public Object call() {
+			destroyDisposableBean(this.beanName);
+			return new Long(System.currentTimeMillis() - this.startTime);
+		}
+	}
+
+
+	/**
+	 * DisposableBean that performs the destruction work for a given bean.
+	 */
+	private static abstract class DisposableBeanAdapter implements DisposableBean {
+
+		private final Object bean;
+
+		public DisposableBeanAdapter(Object bean) {
+			this.bean = bean;
+		}
+	}
+
+
+	/**
+	 * Ancestor factory that contains a bean name, along with the
+	 * hierarchy generation at the time of lookup.
+	 */
+	private static class BeanOwner {
+
+		private final AbstractBeanFactory beanFactory;
+
+		private final long generation;
+
+		public BeanOwner(AbstractBeanFactory beanFactory, long generation) {
+			this.beanFactory = beanFactory;
+			this.generation = generation;
+		}
+	}
+
 }
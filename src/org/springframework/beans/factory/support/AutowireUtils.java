@@ -51,7 +51,7 @@ public abstract class AutowireUtils {
 				}
 				int c1pl = c1.getParameterTypes().length;
 				int c2pl = c2.getParameterTypes().length;
-				return (new Integer(c1pl)).compareTo(new Integer(c2pl)) * -1;
+				return (c1pl > c2pl ? -1 : (c1pl == c2pl ? 0 : 1));
 			}
 		});
 	}
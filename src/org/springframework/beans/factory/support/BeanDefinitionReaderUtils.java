@@ -6,6 +6,7 @@ import org.springframework.beans.MutablePropertyValues;
 import org.springframework.beans.factory.BeanDefinitionStoreException;
 import org.springframework.beans.factory.config.BeanDefinitionHolder;
 import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 
 public class BeanDefinitionReaderUtils {
@@ -15,7 +16,7 @@ public class BeanDefinitionReaderUtils {
 	public static AbstractBeanDefinition createBeanDefinition(String className, String parent, ConstructorArgumentValues cargs, MutablePropertyValues pvs, ClassLoader classLoader) throws ClassNotFoundException {
 		Class beanClass = null;
 		if (className != null && classLoader != null) {
-			beanClass = Class.forName(className, true, classLoader);
+			beanClass = ClassUtils.forName(className, classLoader);
 		}
 		if (parent == null) {
 			if (beanClass != null) {
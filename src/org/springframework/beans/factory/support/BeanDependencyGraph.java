@@ -0,0 +1,422 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans.factory.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependency graph between the beans of a bean factory, recorded as the
+ * beans get created: Each edge says that a bean depends on another bean,
+ * be it through a bean reference, an inner bean, autowiring or "depends-on".
+ * Both directions are indexed, so dependent beans and dependencies of a
+ * bean can be looked up without scanning the graph.
+ *
+ * <p>Used by AbstractBeanFactory to destroy singletons in topological order,
+ * i.e. dependent beans before the beans they depend on, and to determine
+ * the beans that need to be destroyed before each bean when destroying
+ * concurrently.
+ *
+ * <p>Can also be exported for analysis by tooling: The graph records the
+ * creation time of each singleton, which together with the dependencies
+ * allows for determining the critical path of the factory startup.
+ * Note that the creation time of a bean includes the creation of the
+ * dependencies that it triggered on demand.
+ *
+ * <p>Thread-safe. Edges between beans in a cycle are recorded as-is;
+ * use <code>findCycles</code> to detect them.
+ *
+ * @see AbstractBeanFactory#getDependencyGraph
+ * @see AbstractBeanFactory#setParallelDestruction
+ */
+public class BeanDependencyGraph {
+
+	/** Map from bean name to Set of names of the beans that depend on it */
+	private final Map dependentBeans = new LinkedHashMap();
+
+	/** Map from bean name to Set of names of the beans that it depends on */
+	private final Map dependencies = new LinkedHashMap();
+
+	/** Map from bean name to Long creation time in milliseconds, in creation order */
+	private final Map creationMillis = new LinkedHashMap();
+
+
+	/**
+	 * Register a dependency between two beans.
+	 * @param beanName the name of the bean that is depended on
+	 * @param dependentBeanName the name of the dependent bean
+	 */
+	public synchronized void registerDependency(String beanName, String dependentBeanName) {
+		getOrCreateSet(this.dependentBeans, beanName).add(dependentBeanName);
+		getOrCreateSet(this.dependencies, dependentBeanName).add(beanName);
+	}
+
+	/**
+	 * Register the creation of a singleton.
+	 * @param beanName the name of the bean
+	 * @param millis the time that the creation took, in milliseconds
+	 */
+	public synchronized void registerCreation(String beanName, long millis) {
+		this.creationMillis.put(beanName, new Long(millis));
+	}
+
+	/**
+	 * Remove all beans and dependencies from this graph.
+	 */
+	public synchronized void clear() {
+		this.dependentBeans.clear();
+		this.dependencies.clear();
+		this.creationMillis.clear();
+	}
+
+	/**
+	 * Return the names of all beans in this graph, i.e. all beans
+	 * that have been created or are part of a dependency.
+	 */
+	public synchronized String[] getBeanNames() {
+		Set beanNames = new LinkedHashSet(this.creationMillis.keySet());
+		beanNames.addAll(this.dependentBeans.keySet());
+		beanNames.addAll(this.dependencies.keySet());
+		return (String[]) beanNames.toArray(new String[beanNames.size()]);
+	}
+
+	/**
+	 * Return the names of the beans that directly depend on the given bean.
+	 * @return the dependent bean names, or an empty array if none
+	 */
+	public synchronized String[] getDependentBeans(String beanName) {
+		return toArray((Set) this.dependentBeans.get(beanName));
+	}
+
+	/**
+	 * Return the names of the beans that the given bean directly depends on.
+	 * @return the bean names, or an empty array if none
+	 */
+	public synchronized String[] getDependencies(String beanName) {
+		return toArray((Set) this.dependencies.get(beanName));
+	}
+
+	/**
+	 * Return the creation time of the given singleton.
+	 * @return the time in milliseconds, or -1 if the bean hasn't been
+	 * created as singleton
+	 */
+	public synchronized long getCreationMillis(String beanName) {
+		Long millis = (Long) this.creationMillis.get(beanName);
+		return (millis != null ? millis.longValue() : -1);
+	}
+
+	/**
+	 * Export the graph as Map from bean name to String array of the names
+	 * of its dependencies, including all beans in this graph.
+	 * @return a snapshot of the graph, in creation order where known
+	 */
+	public synchronized Map getDependencyMap() {
+		String[] beanNames = getBeanNames();
+		Map dependencyMap = new LinkedHashMap(beanNames.length * 2);
+		for (int i = 0; i < beanNames.length; i++) {
+			dependencyMap.put(beanNames[i], getDependencies(beanNames[i]));
+		}
+		return dependencyMap;
+	}
+
+	/**
+	 * Export the creation times of all singletons in this graph.
+	 * @return a snapshot Map from bean name to Long creation time
+	 * in milliseconds, in creation order
+	 */
+	public synchronized Map getCreationMillis() {
+		return new LinkedHashMap(this.creationMillis);
+	}
+
+	/**
+	 * Find all dependency cycles in this graph, i.e. the strongly connected
+	 * components with more than one bean, plus beans that depend on themselves.
+	 * @return a List of String arrays with the bean names of each cycle
+	 */
+	public synchronized List findCycles() {
+		CycleFinder finder = new CycleFinder();
+		String[] beanNames = getBeanNames();
+		for (int i = 0; i < beanNames.length; i++) {
+			if (!finder.indexes.containsKey(beanNames[i])) {
+				finder.visit(beanNames[i]);
+			}
+		}
+		return finder.cycles;
+	}
+
+	/**
+	 * Determine the order in which to destroy the given beans: dependent beans
+	 * before the beans they depend on, also if only related through other beans
+	 * in this graph. Unrelated beans get destroyed in reverse of the given order.
+	 * Within a cycle, the order is undefined.
+	 * @param beanNames the names of the beans to destroy, typically in
+	 * registration order
+	 * @return the given bean names in destruction order
+	 */
+	public synchronized String[] getDestructionOrder(String[] beanNames) {
+		// depth-first post-order along dependencies gives the creation order
+		List creationOrder = new ArrayList(beanNames.length);
+		Set visited = new HashSet();
+		Set requested = new HashSet();
+		for (int i = 0; i < beanNames.length; i++) {
+			requested.add(beanNames[i]);
+		}
+		for (int i = 0; i < beanNames.length; i++) {
+			addInCreationOrder(beanNames[i], visited, requested, creationOrder);
+		}
+		Collections.reverse(creationOrder);
+		return (String[]) creationOrder.toArray(new String[creationOrder.size()]);
+	}
+
+	/**
+	 * Determine which of the given beans need to be destroyed before each of
+	 * them: its nearest dependent beans among the given beans, also if only
+	 * related through other beans in this graph. Only beans that come earlier
+	 * in the destruction order count, which breaks cycles.
+	 * @param beanNames the names of the beans to destroy, typically in
+	 * registration order
+	 * @return Map from bean name to String array of the names of the beans
+	 * to destroy first, with keys in destruction order
+	 * @see #getDestructionOrder
+	 */
+	public synchronized Map getDestructionPrerequisites(String[] beanNames) {
+		String[] destructionOrder = getDestructionOrder(beanNames);
+		Map positions = new HashMap(destructionOrder.length * 2);
+		for (int i = 0; i < destructionOrder.length; i++) {
+			positions.put(destructionOrder[i], new Integer(i));
+		}
+		Map prerequisites = new LinkedHashMap(destructionOrder.length * 2);
+		for (int i = 0; i < destructionOrder.length; i++) {
+			Set found = new LinkedHashSet();
+			Set visited = new HashSet();
+			List pending = new ArrayList();
+			pending.add(destructionOrder[i]);
+			visited.add(destructionOrder[i]);
+			while (!pending.isEmpty()) {
+				Set beanDependents = (Set) this.dependentBeans.get(pending.remove(pending.size() - 1));
+				if (beanDependents == null) {
+					continue;
+				}
+				for (Iterator it = beanDependents.iterator(); it.hasNext(); ) {
+					String dependent = (String) it.next();
+					if (!visited.add(dependent)) {
+						continue;
+					}
+					Integer position = (Integer) positions.get(dependent);
+					if (position == null) {
+						// not to be destroyed itself: look further
+						pending.add(dependent);
+					}
+					else if (position.intValue() < i) {
+						found.add(dependent);
+					}
+				}
+			}
+			prerequisites.put(destructionOrder[i], found.toArray(new String[found.size()]));
+		}
+		return prerequisites;
+	}
+
+	public String toString() {
+		return "BeanDependencyGraph: dependencies " + toString(getDependencyMap());
+	}
+
+
+	/**
+	 * Add the given bean and its dependencies in depth-first post-order.
+	 * Uses an explicit stack rather than recursion, as dependency chains
+	 * can get long.
+	 */
+	private void addInCreationOrder(String beanName, Set visited, Set requested, List creationOrder) {
+		if (!visited.add(beanName)) {
+			return;
+		}
+		// parallel stacks of bean names and iterators over their remaining dependencies
+		List names = new ArrayList();
+		List iterators = new ArrayList();
+		names.add(beanName);
+		iterators.add(getDependencyIterator(beanName));
+		while (!names.isEmpty()) {
+			int top = names.size() - 1;
+			Iterator it = (Iterator) iterators.get(top);
+			if (it != null && it.hasNext()) {
+				String dependency = (String) it.next();
+				if (visited.add(dependency)) {
+					names.add(dependency);
+					iterators.add(getDependencyIterator(dependency));
+				}
+			}
+			else {
+				String name = (String) names.remove(top);
+				iterators.remove(top);
+				if (requested.contains(name)) {
+					creationOrder.add(name);
+				}
+			}
+		}
+	}
+
+	private Iterator getDependencyIterator(String beanName) {
+		Set beanDependencies = (Set) this.dependencies.get(beanName);
+		return (beanDependencies != null ? beanDependencies.iterator() : null);
+	}
+
+	private static Set getOrCreateSet(Map map, String key) {
+		Set set = (Set) map.get(key);
+		if (set == null) {
+			set = new LinkedHashSet();
+			map.put(key, set);
+		}
+		return set;
+	}
+
+	private static String[] toArray(Set set) {
+		if (set == null) {
+			return new String[0];
+		}
+		return (String[]) set.toArray(new String[set.size()]);
+	}
+
+	private static String toString(Map dependencyMap) {
+		StringBuffer sb = new StringBuffer("{");
+		for (Iterator it = dependencyMap.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry entry = (Map.Entry) it.next();
+			String[] beanDependencies = (String[]) entry.getValue();
+			sb.append(entry.getKey()).append("=[");
+			for (int i = 0; i < beanDependencies.length; i++) {
+				if (i > 0) {
+					sb.append(", ");
+				}
+				sb.append(beanDependencies[i]);
+			}
+			sb.append("]");
+			if (it.hasNext()) {
+				sb.append(", ");
+			}
+		}
+		sb.append("}");
+		return sb.toString();
+	}
+
+
+	/**
+	 * Tarjan's algorithm for strongly connected components,
+	 * with an explicit stack of visits rather than recursion.
+	 */
+	private class CycleFinder {
+
+		private final Map indexes = new HashMap();
+
+		private final Map lowLinks = new HashMap();
+
+		private final List stack = new ArrayList();
+
+		private final Set onStack = new HashSet();
+
+		private final List cycles = new ArrayList();
+
+		private int index = 0;
+
+		private void visit(String beanName) {
+			List visits = new ArrayList();
+			visits.add(enter(beanName));
+			while (!visits.isEmpty()) {
+				Visit visit = (Visit) visits.get(visits.size() - 1);
+				if (visit.dependencies != null && visit.dependencies.hasNext()) {
+					String dependency = (String) visit.dependencies.next();
+					if (dependency.equals(visit.beanName)) {
+						visit.selfReference = true;
+					}
+					Integer dependencyIndex = (Integer) this.indexes.get(dependency);
+					if (dependencyIndex == null) {
+						visits.add(enter(dependency));
+					}
+					else if (this.onStack.contains(dependency)) {
+						visit.lowLink = Math.min(visit.lowLink, dependencyIndex.intValue());
+					}
+				}
+				else {
+					visits.remove(visits.size() - 1);
+					leave(visit);
+					if (!visits.isEmpty()) {
+						Visit parent = (Visit) visits.get(visits.size() - 1);
+						parent.lowLink = Math.min(parent.lowLink, visit.lowLink);
+					}
+				}
+			}
+		}
+
+		private Visit enter(String beanName) {
+			Visit visit = new Visit(beanName, this.index++, getDependencyIterator(beanName));
+			this.indexes.put(beanName, new Integer(visit.index));
+			this.stack.add(beanName);
+			this.onStack.add(beanName);
+			return visit;
+		}
+
+		private void leave(Visit visit) {
+			if (visit.lowLink == visit.index) {
+				List component = new ArrayList();
+				String member = null;
+				do {
+					member = (String) this.stack.remove(this.stack.size() - 1);
+					this.onStack.remove(member);
+					component.add(member);
+				}
+				while (!member.equals(visit.beanName));
+				if (component.size() > 1 || visit.selfReference) {
+					Collections.reverse(component);
+					this.cycles.add(component.toArray(new String[component.size()]));
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * State of a bean visit in CycleFinder.
+	 */
+	private static class Visit {
+
+		private final String beanName;
+
+		private final int index;
+
+		private final Iterator dependencies;
+
+		private int lowLink;
+
+		private boolean selfReference = false;
+
+		public Visit(String beanName, int index, Iterator dependencies) {
+			this.beanName = beanName;
+			this.index = index;
+			this.dependencies = dependencies;
+			this.lowLink = index;
+		}
+	}
+
+}
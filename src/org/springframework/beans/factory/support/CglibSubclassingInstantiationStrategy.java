@@ -18,8 +18,14 @@ package org.springframework.beans.factory.support;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.sf.cglib.proxy.Callback;
 import net.sf.cglib.proxy.CallbackFilter;
@@ -30,6 +36,8 @@ import net.sf.cglib.proxy.NoOp;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.FatalBeanException;
 import org.springframework.beans.factory.BeanFactory;
 
 /**
@@ -40,6 +48,19 @@ import org.springframework.beans.factory.BeanFactory;
  * <p>Using Method Injection features requires CGLIB on the classpath.
  * However, the core IoC container will still run without CGLIB being available.
  *
+ * <p>The generated subclass and its callbacks are cached per bean name,
+ * as long as bean class, method overrides and owning factory stay the same.
+ * Subsequent instantiations, for example of prototypes with lookup methods,
+ * just invoke the cached subclass constructor.
+ *
+ * <p>Overridden methods are resolved to their MethodOverride once, when the
+ * subclass gets generated. Singleton lookup and replacer beans get bound on
+ * first use, as long as the factory hierarchy consists of AbstractBeanFactories:
+ * A bound bean is only used while the hierarchy generation stays the same, so
+ * destroying, removing or re-registering beans anywhere in the hierarchy leads
+ * to fetching the bean from the factory again. Prototypes and beans in other
+ * factories are obtained from the factory on each invocation.
+ *
  * @author Rod Johnson
  * @since 1.1
  */
@@ -63,22 +84,51 @@ public class CglibSubclassingInstantiationStrategy extends SimpleInstantiationSt
 	 */
 	private static final int METHOD_REPLACER = 2;
 
+	/** Map from bean name to CglibSubclassCreator holding the generated subclass */
+	private final Map subclassCache = new ConcurrentHashMap();
+
 
 	protected Object instantiateWithMethodInjection(
 			RootBeanDefinition beanDefinition, String beanName, BeanFactory owner) {
 		// must generate CGLIB subclass
-		return new CglibSubclassCreator(beanDefinition, owner).instantiate(null, null);
+		return getSubclassCreator(beanDefinition, beanName, owner).instantiate(null, null);
 	}
 
 	protected Object instantiateWithMethodInjection(
 			RootBeanDefinition beanDefinition, String beanName, BeanFactory owner,
 			Constructor ctor, Object[] args) {
-		return new CglibSubclassCreator(beanDefinition, owner).instantiate(ctor, args);
+		return getSubclassCreator(beanDefinition, beanName, owner).instantiate(ctor, args);
+	}
+
+	/**
+	 * Return a CglibSubclassCreator with a generated subclass for the given
+	 * bean definition, reusing a cached one if still applicable.
+	 * Anonymous beans don't get cached.
+	 */
+	private CglibSubclassCreator getSubclassCreator(
+			RootBeanDefinition beanDefinition, String beanName, BeanFactory owner) {
+		if (beanName == null) {
+			return new CglibSubclassCreator(beanDefinition, owner);
+		}
+		CglibSubclassCreator creator = (CglibSubclassCreator) this.subclassCache.get(beanName);
+		if (creator == null || !creator.isApplicableTo(beanDefinition, owner)) {
+			synchronized (this.subclassCache) {
+				creator = (CglibSubclassCreator) this.subclassCache.get(beanName);
+				if (creator == null || !creator.isApplicableTo(beanDefinition, owner)) {
+					creator = new CglibSubclassCreator(beanDefinition, owner);
+					this.subclassCache.put(beanName, creator);
+				}
+			}
+		}
+		return creator;
 	}
 
 
 	/**
 	 * An inner class so we don't have a CGLIB dependency in core.
+	 * Generates the subclass on construction, with the callbacks registered
+	 * statically, so that instances can be created via plain reflection.
+	 * Also holds the index from overridden Method to OverrideTarget.
 	 */
 	private static class CglibSubclassCreator {
 
@@ -88,9 +138,54 @@ public class CglibSubclassingInstantiationStrategy extends SimpleInstantiationSt
 
 		private final BeanFactory owner;
 
+		/** The MethodOverride objects that the subclass was generated for */
+		private final Set overrides;
+
+		private final Class subclass;
+
+		/** Map from overridden Method to OverrideTarget, read-only after construction */
+		private final Map overrideTargets = new HashMap();
+
 		public CglibSubclassCreator(RootBeanDefinition beanDefinition, BeanFactory owner) {
 			this.beanDefinition = beanDefinition;
 			this.owner = owner;
+			this.overrides = new HashSet(beanDefinition.getMethodOverrides().getOverrides());
+
+			CallbackFilterImpl callbackFilter = new CallbackFilterImpl();
+			Enhancer enhancer = new Enhancer();
+			enhancer.setSuperclass(beanDefinition.getBeanClass());
+			enhancer.setCallbackFilter(callbackFilter);
+			enhancer.setCallbackTypes(new Class[] {
+					NoOp.class, MethodInterceptor.class, MethodInterceptor.class
+			});
+			// the generated class is cached here, with static callbacks bound to this creator
+			enhancer.setUseCache(false);
+			this.subclass = enhancer.createClass();
+
+			// index overrides once all overloaded method names are known
+			for (Iterator it = callbackFilter.overriddenMethods.iterator(); it.hasNext();) {
+				Method method = (Method) it.next();
+				MethodOverride methodOverride = beanDefinition.getMethodOverrides().getOverride(method);
+				if (methodOverride != null) {
+					this.overrideTargets.put(method, new OverrideTarget(methodOverride));
+				}
+			}
+			Enhancer.registerStaticCallbacks(this.subclass, new Callback[] {
+					NoOp.INSTANCE,
+					new LookupOverrideMethodInterceptor(),
+					new ReplaceOverrideMethodInterceptor()
+			});
+		}
+
+		/**
+		 * Return whether the generated subclass can be used for the given
+		 * bean definition, i.e. whether it has the same bean class and the
+		 * same method overrides, and is instantiated by the same factory.
+		 * Merged child bean definitions share their MethodOverride objects.
+		 */
+		public boolean isApplicableTo(RootBeanDefinition beanDefinition, BeanFactory owner) {
+			return (this.owner == owner && this.beanDefinition.getBeanClass() == beanDefinition.getBeanClass() &&
+					this.overrides.equals(beanDefinition.getMethodOverrides().getOverrides()));
 		}
 
 		/**
@@ -103,41 +198,94 @@ public class CglibSubclassingInstantiationStrategy extends SimpleInstantiationSt
 		 * @return new instance of the dynamically generated class
 		 */
 		public Object instantiate(Constructor ctor, Object[] args) {
-			Enhancer enhancer = new Enhancer();
-			enhancer.setSuperclass(this.beanDefinition.getBeanClass());
-			enhancer.setCallbackFilter(new CallbackFilterImpl());
-			enhancer.setCallbacks(new Callback[] {
-					NoOp.INSTANCE,
-					new LookupOverrideMethodInterceptor(),
-					new ReplaceOverrideMethodInterceptor()
-			});
+			if (ctor == null) {
+				return BeanUtils.instantiateClass(this.subclass);
+			}
+			try {
+				return BeanUtils.instantiateClass(this.subclass.getDeclaredConstructor(ctor.getParameterTypes()), args);
+			}
+			catch (NoSuchMethodException ex) {
+				throw new FatalBeanException("Generated subclass of [" + this.beanDefinition.getBeanClassName() +
+						"] does not declare constructor [" + ctor + "]", ex);
+			}
+		}
 
-			return (ctor == null) ? 
-					enhancer.create() : 
-					enhancer.create(ctor.getParameterTypes(), args);
+		/**
+		 * Return the generation of the owning factory hierarchy,
+		 * or -1 if not all factories in the hierarchy track it.
+		 * @see AbstractBeanFactory#getHierarchyGeneration
+		 */
+		private long getOwnerGeneration() {
+			BeanFactory bf = this.owner;
+			while (bf instanceof AbstractBeanFactory) {
+				bf = ((AbstractBeanFactory) bf).getParentBeanFactory();
+			}
+			return (bf == null ? ((AbstractBeanFactory) this.owner).getHierarchyGeneration() : -1);
+		}
+
+		/**
+		 * Return the OverrideTarget for the given intercepted method.
+		 */
+		private OverrideTarget getOverrideTarget(Method method) {
+			OverrideTarget overrideTarget = (OverrideTarget) this.overrideTargets.get(method);
+			if (overrideTarget == null) {
+				// not indexed: resolve against the bean definition, without caching
+				overrideTarget = new OverrideTarget(this.beanDefinition.getMethodOverrides().getOverride(method));
+			}
+			return overrideTarget;
 		}
 
 
 		/**
-		 * Class providing hashCode and equals methods required by CGLIB to
-		 * ensure that CGLIB doesn't generate a distinct class per bean.
-		 * Identity is based on class and bean definition. 
+		 * Resolved MethodOverride for a specific method,
+		 * with the name of its target bean and the bound singleton target, if any.
 		 */
-		private class CglibIdentitySupport {
+		private class OverrideTarget {
+
+			private final String targetBeanName;
+
+			private volatile BoundTarget boundTarget;
+
+			public OverrideTarget(MethodOverride methodOverride) {
+				this.targetBeanName = (methodOverride instanceof LookupOverride ?
+						((LookupOverride) methodOverride).getBeanName() :
+						((ReplaceOverride) methodOverride).getMethodReplacerBeanName());
+			}
+
 			/**
-			 * Exposed for equals method to allow access to enclosing class field
+			 * Return the lookup bean or MethodReplacer for the method: the bound
+			 * singleton if still valid for the current hierarchy generation,
+			 * else fetched from the factory.
 			 */
-			protected RootBeanDefinition getBeanDefinition() {
-				return beanDefinition;
-			}
-			
-			public int hashCode() {
-				return beanDefinition.hashCode();
+			public Object getTarget() {
+				// read the generation before fetching, to not bind a stale target
+				long generation = getOwnerGeneration();
+				BoundTarget bound = this.boundTarget;
+				if (bound != null && bound.generation == generation) {
+					return bound.target;
+				}
+				Object target = owner.getBean(this.targetBeanName);
+				if (generation != -1 && owner.isSingleton(this.targetBeanName)) {
+					this.boundTarget = new BoundTarget(target, generation);
+				}
+				return target;
 			}
-			
-			public boolean equals(Object other) {
-				return (other.getClass() == getClass()) &&
-						((CglibIdentitySupport) other).getBeanDefinition() == beanDefinition;
+		}
+
+
+		/**
+		 * Singleton target bean, along with the hierarchy generation
+		 * that it was obtained at.
+		 */
+		private static class BoundTarget {
+
+			private final Object target;
+
+			private final long generation;
+
+			public BoundTarget(Object target, long generation) {
+				this.target = target;
+				this.generation = generation;
 			}
 		}
 
@@ -146,12 +294,11 @@ public class CglibSubclassingInstantiationStrategy extends SimpleInstantiationSt
 		 * CGLIB MethodInterceptor to override methods, replacing them with an
 		 * implementation that returns a bean looked up in the container.
 		 */
-		private class LookupOverrideMethodInterceptor extends CglibIdentitySupport implements MethodInterceptor {
+		private class LookupOverrideMethodInterceptor implements MethodInterceptor {
 
 			public Object intercept(Object o, Method m, Object[] args, MethodProxy mp) throws Throwable {
-				// cast is safe as CallbackFilter filters are used selectively
-				LookupOverride lo = (LookupOverride) beanDefinition.getMethodOverrides().getOverride(m);
-				return owner.getBean(lo.getBeanName());
+				// CallbackFilter routes lookup overrides only
+				return getOverrideTarget(m).getTarget();
 			}			
 		}
 
@@ -160,12 +307,10 @@ public class CglibSubclassingInstantiationStrategy extends SimpleInstantiationSt
 		 * CGLIB MethodInterceptor to override methods, replacing them with a call
 		 * to a generic MethodReplacer
 		 */
-		private class ReplaceOverrideMethodInterceptor extends CglibIdentitySupport implements MethodInterceptor {
+		private class ReplaceOverrideMethodInterceptor implements MethodInterceptor {
 
 			public Object intercept(Object o, Method m, Object[] args, MethodProxy mp) throws Throwable {
-				ReplaceOverride lo = (ReplaceOverride) beanDefinition.getMethodOverrides().getOverride(m);
-				// TODO could cache if a singleton for minor performance optimization
-				MethodReplacer mr = (MethodReplacer) owner.getBean(lo.getMethodReplacerBeanName());
+				MethodReplacer mr = (MethodReplacer) getOverrideTarget(m).getTarget();
 				return mr.reimplement(o, m, args);
 			}
 		}
@@ -174,10 +319,13 @@ public class CglibSubclassingInstantiationStrategy extends SimpleInstantiationSt
 		/**
 		 * CGLIB object to filter method interception behavior.
 		 */
-		private class CallbackFilterImpl extends CglibIdentitySupport implements CallbackFilter {
+		private class CallbackFilterImpl implements CallbackFilter {
 			
 			private final Set methodNames = new HashSet();
 
+			/** Methods routed to an override callback */
+			private final List overriddenMethods = new ArrayList();
+
 			public int accept(Method method) {
 				if (!this.methodNames.contains(method.getName())) {
 					this.methodNames.add(method.getName());
@@ -193,7 +341,8 @@ public class CglibSubclassingInstantiationStrategy extends SimpleInstantiationSt
 				if (methodOverride == null) {
 					return PASSTHROUGH;
 				}
-				else if (methodOverride instanceof LookupOverride) {
+				this.overriddenMethods.add(method);
+				if (methodOverride instanceof LookupOverride) {
 					return LOOKUP_OVERRIDE;
 				}
 				else if (methodOverride instanceof ReplaceOverride) {
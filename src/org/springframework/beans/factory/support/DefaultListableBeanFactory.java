@@ -245,6 +245,22 @@ public class DefaultListableBeanFactory extends AbstractAutowireCapableBeanFacto
 		return bd;
 	}
 
+	protected String[] findMatchingBeanNames(Class requiredType) {
+		return BeanFactoryUtils.beanNamesForTypeIncludingAncestors(this, requiredType);
+	}
+
+	protected String[] findUndeterminableBeanNames() {
+		String[] factoryBeanNames = BeanFactoryUtils.beanNamesForTypeIncludingAncestors(this, FactoryBean.class);
+		List result = new ArrayList();
+		for (int i = 0; i < factoryBeanNames.length; i++) {
+			String beanName = BeanFactoryUtils.transformedBeanName(factoryBeanNames[i]);
+			if (getType(beanName) == null) {
+				result.add(beanName);
+			}
+		}
+		return (String[]) result.toArray(new String[result.size()]);
+	}
+
 	protected Map findMatchingBeans(Class requiredType) {
 		return BeanFactoryUtils.beansOfTypeIncludingAncestors(this, requiredType);
 	}
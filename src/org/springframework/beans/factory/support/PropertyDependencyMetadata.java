@@ -0,0 +1,164 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans.factory.support;
+
+import java.beans.PropertyDescriptor;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.PropertyValues;
+
+/**
+ * Precomputed dependency metadata of a bean class, for a given set of
+ * ignored dependency types: the writable properties that are subject to
+ * dependency checks and autowiring, sorted by name and indexed, with bit
+ * sets of the simple and the non-simple ones.
+ *
+ * <p>Determining the unsatisfied properties for given property values
+ * then just takes a lookup per property value plus bit operations.
+ *
+ * @see AbstractAutowireCapableBeanFactory#unsatisfiedObjectProperties
+ * @see AbstractAutowireCapableBeanFactory#dependencyCheck
+ */
+class PropertyDependencyMetadata {
+
+	private final int ignoredTypesGeneration;
+
+	private final String[] propertyNames;
+
+	/** Map from property name to Integer index */
+	private final Map propertyIndexes;
+
+	private final BitSet allProperties;
+
+	private final BitSet simpleProperties;
+
+	private final BitSet objectProperties;
+
+
+	/**
+	 * Create new metadata for the given properties.
+	 * @param pds the property descriptors of the bean class
+	 * @param ignoredTypes the property types to ignore
+	 * @param ignoredTypesGeneration the generation of the ignored types,
+	 * to check whether this metadata is still valid
+	 */
+	public PropertyDependencyMetadata(PropertyDescriptor[] pds, Set ignoredTypes, int ignoredTypesGeneration) {
+		this.ignoredTypesGeneration = ignoredTypesGeneration;
+		PropertyDescriptor[] sortedPds = new PropertyDescriptor[pds.length];
+		int count = 0;
+		for (int i = 0; i < pds.length; i++) {
+			if (pds[i].getWriteMethod() != null && !ignoredTypes.contains(pds[i].getPropertyType())) {
+				sortedPds[count++] = pds[i];
+			}
+		}
+		Arrays.sort(sortedPds, 0, count, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				return ((PropertyDescriptor) o1).getName().compareTo(((PropertyDescriptor) o2).getName());
+			}
+		});
+		this.propertyNames = new String[count];
+		this.propertyIndexes = new HashMap(count * 2);
+		this.allProperties = new BitSet(count);
+		this.simpleProperties = new BitSet(count);
+		this.objectProperties = new BitSet(count);
+		for (int i = 0; i < count; i++) {
+			this.propertyNames[i] = sortedPds[i].getName();
+			this.propertyIndexes.put(this.propertyNames[i], new Integer(i));
+			this.allProperties.set(i);
+			if (BeanUtils.isSimpleProperty(sortedPds[i].getPropertyType())) {
+				this.simpleProperties.set(i);
+			}
+			else {
+				this.objectProperties.set(i);
+			}
+		}
+	}
+
+	/**
+	 * Return whether this metadata applies to the given generation
+	 * of ignored types.
+	 */
+	public boolean isValid(int ignoredTypesGeneration) {
+		return (this.ignoredTypesGeneration == ignoredTypesGeneration);
+	}
+
+	/**
+	 * Return the names of the non-simple properties that are not set
+	 * by the given property values, sorted by name.
+	 */
+	public String[] getUnsatisfiedObjectProperties(PropertyValues pvs) {
+		BitSet unsatisfied = (BitSet) this.objectProperties.clone();
+		unsatisfied.andNot(getSatisfiedProperties(pvs));
+		String[] result = new String[unsatisfied.cardinality()];
+		int index = unsatisfied.nextSetBit(0);
+		for (int i = 0; i < result.length; i++) {
+			result[i] = this.propertyNames[index];
+			index = unsatisfied.nextSetBit(index + 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Return the name of the first property that is required by the given
+	 * dependency check mode but not set by the given property values.
+	 * @param dependencyCheck the dependency check mode
+	 * @param pvs the property values to check
+	 * @return the property name, or null if all required properties are set
+	 * @see AbstractBeanDefinition#DEPENDENCY_CHECK_ALL
+	 * @see AbstractBeanDefinition#DEPENDENCY_CHECK_SIMPLE
+	 * @see AbstractBeanDefinition#DEPENDENCY_CHECK_OBJECTS
+	 */
+	public String getFirstUnsatisfiedProperty(int dependencyCheck, PropertyValues pvs) {
+		BitSet required = null;
+		if (dependencyCheck == AbstractBeanDefinition.DEPENDENCY_CHECK_ALL) {
+			required = this.allProperties;
+		}
+		else if (dependencyCheck == AbstractBeanDefinition.DEPENDENCY_CHECK_SIMPLE) {
+			required = this.simpleProperties;
+		}
+		else if (dependencyCheck == AbstractBeanDefinition.DEPENDENCY_CHECK_OBJECTS) {
+			required = this.objectProperties;
+		}
+		if (required == null || required.isEmpty()) {
+			return null;
+		}
+		BitSet unsatisfied = (BitSet) required.clone();
+		unsatisfied.andNot(getSatisfiedProperties(pvs));
+		int index = unsatisfied.nextSetBit(0);
+		return (index != -1 ? this.propertyNames[index] : null);
+	}
+
+	private BitSet getSatisfiedProperties(PropertyValues pvs) {
+		BitSet satisfied = new BitSet(this.propertyNames.length);
+		PropertyValue[] pvArray = pvs.getPropertyValues();
+		for (int i = 0; i < pvArray.length; i++) {
+			Integer index = (Integer) this.propertyIndexes.get(pvArray[i].getName());
+			if (index != null) {
+				satisfied.set(index.intValue());
+			}
+		}
+		return satisfied;
+	}
+
+}
@@ -1,12 +1,22 @@
 
 package org.springframework.beans.factory.support;
 
+import java.lang.reflect.Member;
+import java.util.Arrays;
+
 import org.springframework.beans.MutablePropertyValues;
+import org.springframework.beans.PropertyValue;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.config.ConstructorArgumentValues;
 
 public class RootBeanDefinition extends AbstractBeanDefinition {
 	
+	/** Factory method or constructor resolved on first instantiation, not copied to other definitions */
+	private volatile ResolvedInstantiation resolvedInstantiation = null;
+	
+	/** Unsatisfied object properties determined on first creation, not copied to other definitions */
+	private volatile ResolvedUnsatisfiedProperties resolvedUnsatisfiedProperties = null;
+	
 	public RootBeanDefinition(Class beanClass) {
 		super();
 		setBeanClass(beanClass);
@@ -58,6 +68,22 @@ public class RootBeanDefinition extends AbstractBeanDefinition {
 		super(original);
 	}
 
+	ResolvedInstantiation getResolvedInstantiation() {
+		return resolvedInstantiation;
+	}
+	
+	void setResolvedInstantiation(ResolvedInstantiation resolvedInstantiation) {
+		this.resolvedInstantiation = resolvedInstantiation;
+	}
+
+	ResolvedUnsatisfiedProperties getResolvedUnsatisfiedProperties() {
+		return resolvedUnsatisfiedProperties;
+	}
+	
+	void setResolvedUnsatisfiedProperties(ResolvedUnsatisfiedProperties resolvedUnsatisfiedProperties) {
+		this.resolvedUnsatisfiedProperties = resolvedUnsatisfiedProperties;
+	}
+
 	public void validate() throws BeanDefinitionValidationException {
 		super.validate();				
 		if (hasBeanClass()) {
@@ -75,4 +101,96 @@ public class RootBeanDefinition extends AbstractBeanDefinition {
 		}
 		return sb.toString();
 	}
+	
+	/**
+	 * Immutable result of a factory method or constructor resolution,
+	 * allowing subsequent instantiations to skip the candidate search.
+	 * <p>Note that merged definitions of ChildBeanDefinitions are built anew
+	 * for each instantiation, so only beans that are defined through a
+	 * RootBeanDefinition benefit from this.
+	 */
+	static class ResolvedInstantiation {
+		
+		private final Member constructorOrFactoryMethod;
+		private final Class factoryClass;
+		private final int argumentCount;
+		private final Object[] argumentSignature;
+		private final long generation;
+		
+		ResolvedInstantiation(Member constructorOrFactoryMethod, Class factoryClass, int argumentCount) {
+			this(constructorOrFactoryMethod, factoryClass, argumentCount, null, 0);
+		}
+		
+		ResolvedInstantiation(Member constructorOrFactoryMethod, Class factoryClass, int argumentCount,
+				Object[] argumentSignature, long generation) {
+			this.constructorOrFactoryMethod = constructorOrFactoryMethod;
+			this.factoryClass = factoryClass;
+			this.argumentCount = argumentCount;
+			this.argumentSignature = argumentSignature;
+			this.generation = generation;
+		}
+		
+		Member getConstructorOrFactoryMethod() {
+			return constructorOrFactoryMethod;
+		}
+		
+		/**
+		 * Return whether this resolution applies to the given factory class
+		 * and number of arguments.
+		 */
+		boolean matches(Class factoryClass, int argumentCount) {
+			return (this.factoryClass == factoryClass && this.argumentCount == argumentCount);
+		}
+		
+		/**
+		 * Return whether this resolution applies to the given factory class,
+		 * number of arguments, signature of the argument values and generation
+		 * of the beans available for autowiring.
+		 */
+		boolean matches(Class factoryClass, int argumentCount, Object[] argumentSignature, long generation) {
+			return (matches(factoryClass, argumentCount) && this.generation == generation &&
+					Arrays.equals(this.argumentSignature, argumentSignature));
+		}
+	}
+	
+	/**
+	 * Immutable result of determining the unsatisfied object properties,
+	 * allowing subsequent autowiring to skip the property checks.
+	 * Keyed on the names of the property values it was determined for.
+	 */
+	static class ResolvedUnsatisfiedProperties {
+		
+		private final PropertyDependencyMetadata metadata;
+		private final String[] propertyValueNames;
+		private final String[] propertyNames;
+		
+		ResolvedUnsatisfiedProperties(PropertyDependencyMetadata metadata, PropertyValue[] propertyValues, String[] propertyNames) {
+			this.metadata = metadata;
+			this.propertyValueNames = new String[propertyValues.length];
+			for (int i = 0; i < propertyValues.length; i++) {
+				this.propertyValueNames[i] = propertyValues[i].getName();
+			}
+			this.propertyNames = propertyNames;
+		}
+		
+		String[] getPropertyNames() {
+			return propertyNames;
+		}
+		
+		/**
+		 * Return whether this result applies to the given metadata
+		 * and property values, i.e. to the same property value names.
+		 */
+		boolean matches(PropertyDependencyMetadata metadata, PropertyValue[] propertyValues) {
+			if (this.metadata != metadata || this.propertyValueNames.length != propertyValues.length) {
+				return false;
+			}
+			for (int i = 0; i < propertyValues.length; i++) {
+				if (!this.propertyValueNames[i].equals(propertyValues[i].getName())) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
 }
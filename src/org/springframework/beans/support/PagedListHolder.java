@@ -73,6 +73,8 @@ public class PagedListHolder implements Serializable {
 
 	private int maxLinkedPages = DEFAULT_MAX_LINKED_PAGES;
 
+	private boolean extractSortKeys = false;
+
 
 	/**
 	 * Create a new holder instance.
@@ -186,6 +188,24 @@ public class PagedListHolder implements Serializable {
 		return maxLinkedPages;
 	}
 
+	/**
+	 * Set whether to resort via PropertySorter, extracting the sort key of
+	 * each element once, instead of via PropertyComparator. Recommended for
+	 * large source lists.
+	 * <p>Default is false.
+	 * @see PropertySorter
+	 */
+	public void setExtractSortKeys(boolean extractSortKeys) {
+		this.extractSortKeys = extractSortKeys;
+	}
+
+	/**
+	 * Return whether to resort via PropertySorter.
+	 */
+	public boolean isExtractSortKeys() {
+		return extractSortKeys;
+	}
+
 
 	/**
 	 * Return the number of pages for the current source list.
@@ -290,7 +310,12 @@ public class PagedListHolder implements Serializable {
 	 */
 	public void resort() {
 		if (this.sort != null && !"".equals(this.sort.getProperty()) && !this.sort.equals(this.sortUsed)) {
-			PropertyComparator.sort(getSource(), this.sort);
+			if (this.extractSortKeys) {
+				PropertySorter.sort(getSource(), this.sort);
+			}
+			else {
+				PropertyComparator.sort(getSource(), this.sort);
+			}
 			this.sortUsed = new MutableSortDefinition(this.sort);
 			setPage(0);
 		}
@@ -33,9 +33,12 @@ import org.springframework.beans.BeansException;
 /**
  * PropertyComparator performs a comparison of two beans,
  * using the specified bean property via a BeanWrapper.
+ * Consider PropertySorter for sorting large lists, as it reads
+ * each property value only once.
  * @author Juergen Hoeller
  * @author Jean-Pierre Pawlak
  * @since 19.05.2003
+ * @see PropertySorter
  */
 public class PropertyComparator implements Comparator {
 
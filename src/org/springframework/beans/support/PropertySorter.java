@@ -0,0 +1,312 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans.support;
+
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.BeansException;
+
+/**
+ * Sorts beans by a bean property like PropertyComparator does, but extracts
+ * the sort key of each element only once instead of on every comparison.
+ *
+ * <p>All keys are read through a single BeanWrapper into a key column,
+ * with Strings lowercased upfront in case of "ignoreCase". Integral keys
+ * (Integer, Long, Short, Byte) are kept in a primitive <code>long</code>
+ * column if there are no null values. A permutation of element indexes
+ * then gets sorted against the key column, using a stable merge sort that
+ * forks into parallel tasks for lists of more than PARALLEL_SORT_THRESHOLD
+ * elements. Finally, the elements are rearranged according to the sorted
+ * permutation.
+ *
+ * <p>The resulting order is the same as with PropertyComparator: null keys
+ * go last (first when descending), and incomparable keys are treated as equal.
+ *
+ * @see PropertyComparator
+ * @see PagedListHolder#setExtractSortKeys
+ */
+public abstract class PropertySorter {
+
+	/** Minimum number of elements to sort in parallel */
+	public static final int PARALLEL_SORT_THRESHOLD = 8192;
+
+	/** Ranges up to this size are sorted via insertion sort */
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+
+	private static final Log logger = LogFactory.getLog(PropertySorter.class);
+
+
+	/**
+	 * Sort the given List according to the given sort definition.
+	 * <p>Note: Contained objects have to provide the given property
+	 * in the form of a bean property, i.e. a getXXX method.
+	 * @param source the input List
+	 * @param sortDefinition the parameters to sort by
+	 * @see PropertyComparator#sort(java.util.List, SortDefinition)
+	 */
+	public static void sort(List source, SortDefinition sortDefinition) throws BeansException {
+		Object[] elements = source.toArray();
+		sort(elements, sortDefinition);
+		ListIterator it = source.listIterator();
+		for (int i = 0; i < elements.length; i++) {
+			it.next();
+			it.set(elements[i]);
+		}
+	}
+
+	/**
+	 * Sort the given source according to the given sort definition.
+	 * <p>Note: Contained objects have to provide the given property
+	 * in the form of a bean property, i.e. a getXXX method.
+	 * @param source input source
+	 * @param sortDefinition the parameters to sort by
+	 * @see PropertyComparator#sort(Object[], SortDefinition)
+	 */
+	public static void sort(Object[] source, SortDefinition sortDefinition) throws BeansException {
+		if (source.length < 2) {
+			return;
+		}
+		int[] order = sortIndexes(source, sortDefinition);
+		Object[] sorted = new Object[source.length];
+		for (int i = 0; i < order.length; i++) {
+			sorted[i] = source[order[i]];
+		}
+		System.arraycopy(sorted, 0, source, 0, sorted.length);
+	}
+
+	/**
+	 * Determine the sorted order of the given source, without modifying it.
+	 * @param source input source
+	 * @param sortDefinition the parameters to sort by
+	 * @return the indexes of the source elements, in sorted order
+	 */
+	public static int[] sortIndexes(Object[] source, SortDefinition sortDefinition) throws BeansException {
+		KeyColumn keys = extractKeys(source, sortDefinition);
+		int[] order = new int[source.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		int[] buffer = new int[order.length];
+		if (order.length > PARALLEL_SORT_THRESHOLD) {
+			ForkJoinPool.commonPool().invoke(new MergeSortTask(order, buffer, 0, order.length, keys));
+		}
+		else {
+			mergeSort(order, buffer, 0, order.length, keys);
+		}
+		return order;
+	}
+
+
+	/**
+	 * Read the sort key of every element into a key column.
+	 */
+	private static KeyColumn extractKeys(Object[] source, SortDefinition sortDefinition) {
+		BeanWrapperImpl bw = new BeanWrapperImpl();
+		Object[] keys = new Object[source.length];
+		boolean integral = true;
+		for (int i = 0; i < source.length; i++) {
+			bw.setWrappedInstance(source[i]);
+			Object key = null;
+			// If a nested property cannot be read, simply treat it as null
+			// (similar to JSTL EL). If the property doesn't exist in the
+			// first place, let the exception through.
+			try {
+				key = bw.getPropertyValue(sortDefinition.getProperty());
+			}
+			catch (BeansException ex) {
+				logger.info("PropertySorter could not access property - treating as null for sorting", ex);
+			}
+			if (sortDefinition.isIgnoreCase() && key instanceof String) {
+				key = ((String) key).toLowerCase();
+			}
+			keys[i] = key;
+			integral = integral && (key instanceof Integer || key instanceof Long ||
+					key instanceof Short || key instanceof Byte);
+		}
+		if (integral) {
+			long[] longKeys = new long[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				longKeys[i] = ((Number) keys[i]).longValue();
+			}
+			return new LongKeyColumn(longKeys, sortDefinition.isAscending());
+		}
+		return new ObjectKeyColumn(keys, sortDefinition.isAscending());
+	}
+
+	/**
+	 * Stable merge sort of the given index range against the key column.
+	 */
+	private static void mergeSort(int[] order, int[] buffer, int from, int to, KeyColumn keys) {
+		if (to - from <= INSERTION_SORT_THRESHOLD) {
+			insertionSort(order, from, to, keys);
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(order, buffer, from, mid, keys);
+		mergeSort(order, buffer, mid, to, keys);
+		merge(order, buffer, from, mid, to, keys);
+	}
+
+	private static void insertionSort(int[] order, int from, int to, KeyColumn keys) {
+		for (int i = from + 1; i < to; i++) {
+			int index = order[i];
+			int j = i;
+			while (j > from && keys.compare(order[j - 1], index) > 0) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = index;
+		}
+	}
+
+	private static void merge(int[] order, int[] buffer, int from, int mid, int to, KeyColumn keys) {
+		if (keys.compare(order[mid - 1], order[mid]) <= 0) {
+			// already in order
+			return;
+		}
+		System.arraycopy(order, from, buffer, from, to - from);
+		int left = from;
+		int right = mid;
+		for (int i = from; i < to; i++) {
+			if (right >= to || (left < mid && keys.compare(buffer[left], buffer[right]) <= 0)) {
+				order[i] = buffer[left++];
+			}
+			else {
+				order[i] = buffer[right++];
+			}
+		}
+	}
+
+
+	/**
+	 * Fork/join variant of the merge sort, sorting both halves in parallel
+	 * until ranges fall below the parallel sort threshold.
+	 */
+	private static class MergeSortTask extends RecursiveAction {
+
+		private final int[] order;
+
+		private final int[] buffer;
+
+		private final int from;
+
+		private final int to;
+
+		private final KeyColumn keys;
+
+		public MergeSortTask(int[] order, int[] buffer, int from, int to, KeyColumn keys) {
+			this.order = order;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+			this.keys = keys;
+		}
+
+		protected void compute() {
+			if (this.to - this.from <= PARALLEL_SORT_THRESHOLD) {
+				mergeSort(this.order, this.buffer, this.from, this.to, this.keys);
+				return;
+			}
+			int mid = (this.from + this.to) >>> 1;
+			invokeAll(new MergeSortTask(this.order, this.buffer, this.from, mid, this.keys),
+					new MergeSortTask(this.order, this.buffer, mid, this.to, this.keys));
+			merge(this.order, this.buffer, this.from, mid, this.to, this.keys);
+		}
+	}
+
+
+	/**
+	 * Extracted sort keys, compared by element index.
+	 */
+	private static abstract class KeyColumn {
+
+		private final boolean ascending;
+
+		protected KeyColumn(boolean ascending) {
+			this.ascending = ascending;
+		}
+
+		public final int compare(int index1, int index2) {
+			int result = compareKeys(index1, index2);
+			return (this.ascending ? result : -result);
+		}
+
+		protected abstract int compareKeys(int index1, int index2);
+	}
+
+
+	/**
+	 * Key column for integral keys without null values.
+	 */
+	private static class LongKeyColumn extends KeyColumn {
+
+		private final long[] keys;
+
+		public LongKeyColumn(long[] keys, boolean ascending) {
+			super(ascending);
+			this.keys = keys;
+		}
+
+		protected int compareKeys(int index1, int index2) {
+			long v1 = this.keys[index1];
+			long v2 = this.keys[index2];
+			return (v1 < v2 ? -1 : (v1 == v2 ? 0 : 1));
+		}
+	}
+
+
+	/**
+	 * Key column for arbitrary Comparable keys, putting null keys at the end.
+	 */
+	private static class ObjectKeyColumn extends KeyColumn {
+
+		private final Object[] keys;
+
+		public ObjectKeyColumn(Object[] keys, boolean ascending) {
+			super(ascending);
+			this.keys = keys;
+		}
+
+		protected int compareKeys(int index1, int index2) {
+			Object v1 = this.keys[index1];
+			Object v2 = this.keys[index2];
+			if (v1 == null) {
+				return (v2 != null ? 1 : 0);
+			}
+			if (v2 == null) {
+				return -1;
+			}
+			try {
+				return ((Comparable) v1).compareTo(v2);
+			}
+			catch (RuntimeException ex) {
+				if (logger.isWarnEnabled()) {
+					logger.warn("Could not sort keys [" + v1 + "] and [" + v2 + "]", ex);
+				}
+				return 0;
+			}
+		}
+	}
+
+}
@@ -64,10 +64,17 @@ import org.springframework.beans.BeanUtils;
  * }<br>
  * </code>
  *
+ * <p>If the source provider implements WindowedPagedListSourceProvider, the List
+ * is not loaded as a whole: The holder keeps a WindowedSourceList as source,
+ * which loads the elements of the requested page plus a number of prefetched
+ * pages on demand, keeping recently used pages in an LRU cache. Sorting is
+ * delegated to the provider in that case.
+ *
  * @author Jean-Pierre Pawlak
  * @author Juergen Hoeller
  * @since 24.05.2003
  * @see org.springframework.beans.support.PagedListSourceProvider
+ * @see org.springframework.beans.support.WindowedPagedListSourceProvider
  * @see org.springframework.beans.propertyeditors.LocaleEditor
  */
 public class RefreshablePagedListHolder extends PagedListHolder {
@@ -82,6 +89,10 @@ public class RefreshablePagedListHolder extends PagedListHolder {
 
 	private Object filterUsed;
 
+	private int prefetchPages = 1;
+
+	private int maxCachedPages = 10;
+
 	/**
 	 * Create a new list holder.
 	 * You'll need to set a source provider to be able to use the holder.
@@ -151,6 +162,38 @@ public class RefreshablePagedListHolder extends PagedListHolder {
 		return filter;
 	}
 
+	/**
+	 * Set the number of pages to load in advance along with a requested page,
+	 * for a WindowedPagedListSourceProvider. Default is 1, i.e. the next page.
+	 * @see WindowedPagedListSourceProvider
+	 */
+	public void setPrefetchPages(int prefetchPages) {
+		this.prefetchPages = prefetchPages;
+	}
+
+	/**
+	 * Return the number of pages to load in advance along with a requested page.
+	 */
+	public int getPrefetchPages() {
+		return prefetchPages;
+	}
+
+	/**
+	 * Set the maximum number of pages to keep in memory,
+	 * for a WindowedPagedListSourceProvider. Default is 10.
+	 * @see WindowedPagedListSourceProvider
+	 */
+	public void setMaxCachedPages(int maxCachedPages) {
+		this.maxCachedPages = maxCachedPages;
+	}
+
+	/**
+	 * Return the maximum number of pages to keep in memory.
+	 */
+	public int getMaxCachedPages() {
+		return maxCachedPages;
+	}
+
 	/**
 	 * Reload the underlying list from the source provider if necessary
 	 * (i.e. if the locale and/or the filter has changed), and resort it.
@@ -160,7 +203,13 @@ public class RefreshablePagedListHolder extends PagedListHolder {
 		if (this.sourceProvider != null && (force ||
 		    (this.locale != null && !this.locale.equals(this.localeUsed)) ||
 		    (this.filter != null && !this.filter.equals(this.filterUsed)))) {
-			setSource(this.sourceProvider.loadList(this.locale, this.filter));
+			if (this.sourceProvider instanceof WindowedPagedListSourceProvider) {
+				setSource(new WindowedSourceList((WindowedPagedListSourceProvider) this.sourceProvider,
+						this.locale, this.filter, getSortToApply(), getPageSize(), this.prefetchPages, this.maxCachedPages));
+			}
+			else {
+				setSource(this.sourceProvider.loadList(this.locale, this.filter));
+			}
 			if (this.filter != null && !this.filter.equals(this.filterUsed)) {
 				this.setPage(0);
 			}
@@ -173,4 +222,34 @@ public class RefreshablePagedListHolder extends PagedListHolder {
 		resort();
 	}
 
+	/**
+	 * Resort the list if necessary. A WindowedSourceList gets replaced
+	 * with one that lets the source provider apply the new sort definition.
+	 */
+	public void resort() {
+		if (getSource() instanceof WindowedSourceList) {
+			WindowedSourceList source = (WindowedSourceList) getSource();
+			SortDefinition sort = getSortToApply();
+			if (sort != null && !sort.equals(source.getSort())) {
+				setSource(source.withSort(sort));
+				setPage(0);
+			}
+		}
+		else {
+			super.resort();
+		}
+	}
+
+	/**
+	 * Return a copy of the current sort definition,
+	 * or null if there is no sort property.
+	 */
+	private SortDefinition getSortToApply() {
+		SortDefinition sort = getSort();
+		if (sort == null || "".equals(sort.getProperty())) {
+			return null;
+		}
+		return new MutableSortDefinition(sort);
+	}
+
 }
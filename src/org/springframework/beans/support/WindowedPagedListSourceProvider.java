@@ -0,0 +1,61 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans.support;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Extension of PagedListSourceProvider for large result sets: Provides the
+ * total number of elements and individual ranges of elements, instead of
+ * the entire List. Typically implemented via a count query and a query
+ * with offset and limit.
+ *
+ * <p>RefreshablePagedListHolder detects this interface and only loads
+ * the ranges that are actually displayed, plus a prefetch window.
+ * As the List is never fully materialized, sorting needs to be applied
+ * by the provider.
+ *
+ * @see RefreshablePagedListHolder#setSourceProvider
+ * @see WindowedSourceList
+ */
+public interface WindowedPagedListSourceProvider extends PagedListSourceProvider {
+
+	/**
+	 * Return the total number of elements for the given Locale and filter settings.
+	 * @param locale Locale that the elements should be loaded for,
+	 * or null if not locale-specific
+	 * @param filter object representing filter settings,
+	 * or null if no filter options are used
+	 * @return the total number of elements
+	 */
+	int countElements(Locale locale, Object filter);
+
+	/**
+	 * Load the given range of elements for the given Locale and filter settings.
+	 * @param locale Locale that the elements should be loaded for,
+	 * or null if not locale-specific
+	 * @param filter object representing filter settings,
+	 * or null if no filter options are used
+	 * @param sort the sort definition to apply, or null if unsorted
+	 * @param firstElement the index of the first element to load
+	 * @param maxElements the maximum number of elements to load
+	 * @return the loaded elements, fewer than requested at the end of the data
+	 */
+	List loadElements(Locale locale, Object filter, SortDefinition sort, int firstElement, int maxElements);
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.beans.support;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Read-only List that loads its elements lazily from a
+ * WindowedPagedListSourceProvider, one window of elements at a time.
+ * The total size is determined once, via <code>countElements</code>.
+ *
+ * <p>Accessing an element that is not loaded yet fetches its window plus
+ * the given number of following windows in a single provider call.
+ * Loaded windows are kept in an LRU cache, so that navigating between
+ * adjacent pages doesn't hit the provider again.
+ *
+ * <p>Used as source List by RefreshablePagedListHolder, with its page size
+ * as window size. <code>subList</code> on this List only loads the windows
+ * that the sub-list covers.
+ *
+ * @see WindowedPagedListSourceProvider
+ * @see RefreshablePagedListHolder
+ */
+public class WindowedSourceList extends AbstractList implements Serializable {
+
+	private final WindowedPagedListSourceProvider sourceProvider;
+
+	private final Locale locale;
+
+	private final Object filter;
+
+	private final SortDefinition sort;
+
+	private final int windowSize;
+
+	private final int prefetchWindows;
+
+	private final int maxCachedWindows;
+
+	private int size = -1;
+
+	/** Map from Integer window index to List of elements, in access order */
+	private final Map windows;
+
+	private int loadCount = 0;
+
+
+	/**
+	 * Create a new WindowedSourceList.
+	 * @param sourceProvider the provider to load elements from
+	 * @param locale the Locale to pass to the provider, or null
+	 * @param filter the filter to pass to the provider, or null
+	 * @param sort the sort definition to pass to the provider, or null
+	 * @param windowSize the number of elements per window (typically the page size)
+	 * @param prefetchWindows the number of following windows to load along
+	 * with a requested window
+	 * @param maxCachedWindows the maximum number of windows to keep in memory
+	 */
+	public WindowedSourceList(WindowedPagedListSourceProvider sourceProvider, Locale locale, Object filter,
+			SortDefinition sort, int windowSize, int prefetchWindows, final int maxCachedWindows) {
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("windowSize must be positive");
+		}
+		this.sourceProvider = sourceProvider;
+		this.locale = locale;
+		this.filter = filter;
+		this.sort = sort;
+		this.windowSize = windowSize;
+		this.prefetchWindows = Math.max(prefetchWindows, 0);
+		this.maxCachedWindows = Math.max(maxCachedWindows, this.prefetchWindows + 1);
+		this.windows = new LinkedHashMap(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry eldest) {
+				return size() > WindowedSourceList.this.maxCachedWindows;
+			}
+		};
+	}
+
+	/**
+	 * Return the sort definition passed to the provider.
+	 */
+	public SortDefinition getSort() {
+		return sort;
+	}
+
+	/**
+	 * Return the number of provider calls for loading elements so far.
+	 */
+	public int getLoadCount() {
+		return loadCount;
+	}
+
+	/**
+	 * Return a new WindowedSourceList for the same provider, Locale and filter,
+	 * but with the given sort definition. Keeps the known total size, as sorting
+	 * doesn't affect it.
+	 */
+	public WindowedSourceList withSort(SortDefinition sort) {
+		WindowedSourceList list = new WindowedSourceList(this.sourceProvider, this.locale, this.filter,
+				sort, this.windowSize, this.prefetchWindows, this.maxCachedWindows);
+		list.size = this.size;
+		return list;
+	}
+
+
+	public int size() {
+		if (this.size == -1) {
+			this.size = this.sourceProvider.countElements(this.locale, this.filter);
+		}
+		return this.size;
+	}
+
+	public Object get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		Integer windowIndex = new Integer(index / this.windowSize);
+		List window = (List) this.windows.get(windowIndex);
+		if (window == null) {
+			window = loadWindows(windowIndex.intValue());
+		}
+		int offset = index % this.windowSize;
+		if (offset >= window.size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + " not provided by " + this.sourceProvider +
+					" - fewer elements than counted");
+		}
+		return window.get(offset);
+	}
+
+	/**
+	 * Load the given window plus the prefetch windows in a single call,
+	 * stopping at the first window that is cached already.
+	 * @return the elements of the requested window
+	 */
+	private List loadWindows(int windowIndex) {
+		int lastWindowIndex = (size() - 1) / this.windowSize;
+		int count = 1;
+		while (count <= this.prefetchWindows && windowIndex + count <= lastWindowIndex &&
+				!this.windows.containsKey(new Integer(windowIndex + count))) {
+			count++;
+		}
+		int firstElement = windowIndex * this.windowSize;
+		List elements = this.sourceProvider.loadElements(
+				this.locale, this.filter, this.sort, firstElement, count * this.windowSize);
+		this.loadCount++;
+		List requested = null;
+		for (int i = count - 1; i >= 0; i--) {
+			int from = Math.min(i * this.windowSize, elements.size());
+			int to = Math.min(from + this.windowSize, elements.size());
+			List window = new ArrayList(elements.subList(from, to));
+			// put the requested window last, making it the most recently used
+			this.windows.put(new Integer(windowIndex + i), window);
+			if (i == 0) {
+				requested = window;
+			}
+		}
+		return requested;
+	}
+
+}
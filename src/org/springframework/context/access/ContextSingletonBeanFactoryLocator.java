@@ -16,8 +16,8 @@
 
 package org.springframework.context.access;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
@@ -49,7 +49,7 @@ public class ContextSingletonBeanFactoryLocator extends SingletonBeanFactoryLoca
 	public static final String BEANS_REFS_XML_NAME = "classpath*:beanRefContext.xml";
 	
 	// the keyed singleton instances
-	private static Map instances = new HashMap();
+	private static final ConcurrentMap instances = new ConcurrentHashMap();
 
 
 	/**
@@ -84,18 +84,20 @@ public class ContextSingletonBeanFactoryLocator extends SingletonBeanFactoryLoca
 		if (selector.indexOf(':') == -1)
 			selector = ResourcePatternResolver.CLASSPATH_URL_PREFIX + selector;
 		
-		synchronized (instances) {
-			if (logger.isDebugEnabled()) {
-				logger.debug("ContextSingletonBeanFactoryLocator.getInstance(): instances.hashCode=" +
-				             instances.hashCode() + ", instances=" + instances);
-			}
-			BeanFactoryLocator bfl = (BeanFactoryLocator) instances.get(selector);
+		if (logger.isDebugEnabled()) {
+			logger.debug("ContextSingletonBeanFactoryLocator.getInstance(): instances.hashCode=" +
+			             instances.hashCode() + ", instances=" + instances);
+		}
+		BeanFactoryLocator bfl = (BeanFactoryLocator) instances.get(selector);
+		if (bfl == null) {
+			// creating a locator is cheap, the group definition is loaded lazily
+			BeanFactoryLocator newBfl = new ContextSingletonBeanFactoryLocator(selector);
+			bfl = (BeanFactoryLocator) instances.putIfAbsent(selector, newBfl);
 			if (bfl == null) {
-				bfl = new ContextSingletonBeanFactoryLocator(selector);
-				instances.put(selector, bfl);
+				bfl = newBfl;
 			}
-			return bfl;
 		}
+		return bfl;
 	}
 
 
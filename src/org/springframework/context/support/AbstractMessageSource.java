@@ -17,9 +17,11 @@
 package org.springframework.context.support;
 
 import java.text.MessageFormat;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,9 +44,19 @@ import org.springframework.context.NoSuchMessageException;
  * dynamically change messages over time. Subclasses are encouraged
  * to cache their messages in a modification-aware fashion.
  *
+ * <p>In a hierarchy of AbstractMessageSources, the MessageSource that a code
+ * was originally requested from remembers which ancestor resolved it for
+ * a given Locale, and subsequently goes straight to that ancestor. This only
+ * applies if all MessageSources in the chain declare themselves as
+ * cacheable, i.e. if they invalidate such cached resolution locations
+ * whenever their messages change. Parents that override getMessageInternal
+ * are always delegated to, just like MessageSources of other kinds.
+ *
  * @author Rod Johnson
  * @author Juergen Hoeller
  * @see #resolveCode
+ * @see #isResolutionCacheable
+ * @see #invalidateResolutionCache
  */
 public abstract class AbstractMessageSource implements HierarchicalMessageSource {
 
@@ -54,9 +66,29 @@ public abstract class AbstractMessageSource implements HierarchicalMessageSource
 
 	private boolean useCodeAsDefaultMessage = false;
 
+	/**
+	 * Cache of ancestors that resolved a code: Map from code to Map from
+	 * Locale to ResolutionLocation. Only holds codes that were not resolved
+	 * by this MessageSource itself.
+	 */
+	private final ConcurrentMap resolutionLocations = new ConcurrentHashMap();
+
+	/**
+	 * Source of resolution generations, shared by all MessageSources:
+	 * A new generation is higher than any generation issued before.
+	 */
+	private static final AtomicLong generationCounter = new AtomicLong();
+
+	/** Renewed whenever the messages or the parent of this MessageSource change */
+	private volatile long resolutionGeneration = generationCounter.incrementAndGet();
+
+	/** Whether a subclass overrides getMessageInternal */
+	private final boolean customMessageResolution = overridesGetMessageInternal(getClass());
+
 
 	public void setParentMessageSource(MessageSource parent) {
 		this.parentMessageSource = parent;
+		invalidateResolutionCache();
 	}
 
 	public MessageSource getParentMessageSource() {
@@ -155,33 +187,45 @@ public abstract class AbstractMessageSource implements HierarchicalMessageSource
 			locale = Locale.getDefault();
 		}
 
-		if (args == null || args.length == 0) {
-			// Optimized resolution: no arguments to apply,
-			// therefore no MessageFormat needs to be involved.
-			// Note that the default implementation still uses MessageFormat;
-			// this can be overridden in specific subclasses.
-			String message = resolveCodeWithoutArguments(code, locale);
-			if (message != null) {
-				return message;
-			}
+		String message = getMessageFromThisSource(code, args, locale);
+		if (message != null || this.parentMessageSource == null) {
+			return message;
 		}
-		else {
-			MessageFormat messageFormat = resolveCode(code, locale);
-			if (messageFormat != null) {
-				return messageFormat.format(resolveArguments(args, locale));
+
+		// not found -> check ancestor that resolved the code before, if any
+		long generation = getHierarchyGeneration();
+		if (generation >= 0) {
+			Map localeMap = (Map) this.resolutionLocations.get(code);
+			ResolutionLocation location = (localeMap != null ? (ResolutionLocation) localeMap.get(locale) : null);
+			if (location != null && location.generation == generation) {
+				message = location.messageSource.getMessageFromThisSource(code, args, locale);
+				if (message != null) {
+					return message;
+				}
 			}
 		}
 
-		// not found -> check parent, if any
-		if (this.parentMessageSource != null) {
-			if (this.parentMessageSource instanceof AbstractMessageSource) {
+		// check parents in turn
+		AbstractMessageSource current = this;
+		while (current.parentMessageSource != null) {
+			if (current.parentMessageSource instanceof AbstractMessageSource) {
 				// Call internal method to avoid getting the default code back
 				// in case of "useCodeAsDefaultMessage" being activated.
-				return ((AbstractMessageSource) this.parentMessageSource).getMessageInternal(code, args, locale);
+				current = (AbstractMessageSource) current.parentMessageSource;
+				if (current.customMessageResolution) {
+					return current.getMessageInternal(code, args, locale);
+				}
+				message = current.getMessageFromThisSource(code, args, locale);
+				if (message != null) {
+					if (generation >= 0) {
+						cacheResolutionLocation(code, locale, current, generation);
+					}
+					return message;
+				}
 			}
 			else {
 				// Check parent MessageSource, returning null if not found there.
-				return this.parentMessageSource.getMessage(code, args, null, locale);
+				return current.parentMessageSource.getMessage(code, args, null, locale);
 			}
 		}
 
@@ -189,12 +233,109 @@ public abstract class AbstractMessageSource implements HierarchicalMessageSource
 		return null;
 	}
 
+	/**
+	 * Resolve the given code and arguments in this MessageSource,
+	 * without checking the parent.
+	 * @return the resolved message, or null if not found
+	 */
+	private String getMessageFromThisSource(String code, Object[] args, Locale locale) {
+		if (args == null || args.length == 0) {
+			// Optimized resolution: no arguments to apply,
+			// therefore no MessageFormat needs to be involved.
+			return resolveCodeWithoutArguments(code, locale);
+		}
+		else {
+			MessageTemplate template = resolveTemplate(code, locale);
+			if (template != null) {
+				return template.format(resolveArguments(args, locale));
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Return the latest resolution generation of this MessageSource and
+	 * the ancestors that its own lookup walks through, or -1 if any of them
+	 * is not cacheable. As generations are unique across all MessageSources,
+	 * and replacing the parent of a MessageSource renews its generation,
+	 * this value changes whenever any MessageSource in the chain changes,
+	 * and never returns to an earlier value.
+	 */
+	private long getHierarchyGeneration() {
+		long generation = 0;
+		AbstractMessageSource current = this;
+		while (current != null) {
+			if (!current.isResolutionCacheable()) {
+				return -1;
+			}
+			generation = Math.max(generation, current.resolutionGeneration);
+			current = (current.parentMessageSource instanceof AbstractMessageSource &&
+					!((AbstractMessageSource) current.parentMessageSource).customMessageResolution ?
+					(AbstractMessageSource) current.parentMessageSource : null);
+		}
+		return generation;
+	}
+
+	/**
+	 * Determine whether the given class overrides getMessageInternal,
+	 * in which case descendants need to delegate to it.
+	 */
+	private static boolean overridesGetMessageInternal(Class clazz) {
+		for (Class current = clazz; current != AbstractMessageSource.class; current = current.getSuperclass()) {
+			try {
+				current.getDeclaredMethod("getMessageInternal", new Class[] {String.class, Object[].class, Locale.class});
+				return true;
+			}
+			catch (NoSuchMethodException ex) {
+				// not declared here -> check superclass
+			}
+		}
+		return false;
+	}
+
+	private void cacheResolutionLocation(String code, Locale locale, AbstractMessageSource messageSource,
+			long generation) {
+		ConcurrentMap localeMap = (ConcurrentMap) this.resolutionLocations.get(code);
+		if (localeMap == null) {
+			localeMap = new ConcurrentHashMap();
+			ConcurrentMap existing = (ConcurrentMap) this.resolutionLocations.putIfAbsent(code, localeMap);
+			if (existing != null) {
+				localeMap = existing;
+			}
+		}
+		localeMap.put(locale, new ResolutionLocation(messageSource, generation));
+	}
+
+	/**
+	 * Return whether descendant MessageSources may cache that a code is
+	 * resolved by an ancestor of this MessageSource, skipping this one
+	 * on subsequent lookups.
+	 * <p>Default is false. Subclasses should return true if they call
+	 * <code>invalidateResolutionCache</code> whenever their messages change.
+	 * @see #invalidateResolutionCache
+	 */
+	protected boolean isResolutionCacheable() {
+		return false;
+	}
+
+	/**
+	 * Invalidate cached resolution locations that involve this MessageSource,
+	 * in this MessageSource and in all its descendants. To be called by
+	 * subclasses whenever their messages change.
+	 * @see #isResolutionCacheable
+	 */
+	protected void invalidateResolutionCache() {
+		this.resolutionGeneration = generationCounter.incrementAndGet();
+		this.resolutionLocations.clear();
+	}
+
 	/**
 	 * Subclasses can override this method to resolve a message without
 	 * arguments in an optimized fashion, i.e. to resolve a message
 	 * without involving a MessageFormat.
-	 * <p>The default implementation <i>does</i> use MessageFormat,
-	 * through delegating to the <code>resolveCode</code> method.
+	 * <p>The default implementation delegates to <code>resolveTemplate</code>,
+	 * returning the message that the MessageTemplate precomputed. This only
+	 * avoids MessageFormat if <code>resolveTemplate</code> is overridden too.
 	 * Subclasses are encouraged to replace this with optimized resolution.
 	 * <p>Unfortunately, <code>java.text.MessageFormat</code> is not
 	 * implemented in an efficient fashion. In particular, it does not
@@ -205,13 +346,35 @@ public abstract class AbstractMessageSource implements HierarchicalMessageSource
 	 * @param locale the Locale to resolve the code for
 	 * (subclasses are encouraged to support internationalization)
 	 * @return the message String, or null if not found
-	 * @see #resolveCode
+	 * @see #resolveTemplate
 	 * @see java.text.MessageFormat
 	 */
 	protected String resolveCodeWithoutArguments(String code, Locale locale) {
+		MessageTemplate template = resolveTemplate(code, locale);
+		if (template != null) {
+			return template.formatWithoutArguments();
+		}
+		return null;
+	}
+
+	/**
+	 * Subclasses can override this method to resolve a message into a
+	 * MessageTemplate, which renders simple "{0}"-style placeholders without
+	 * involving a MessageFormat. Subclasses should cache the templates that
+	 * they create via <code>createMessageTemplate</code>.
+	 * <p>The default implementation delegates to <code>resolveCode</code>,
+	 * wrapping the MessageFormat in a lightweight MessageTemplate that formats
+	 * through it, without analyzing its pattern.
+	 * @param code the code of the message to resolve
+	 * @param locale the Locale to resolve the code for
+	 * @return the MessageTemplate for the message, or null if not found
+	 * @see #resolveCode
+	 * @see #createMessageTemplate
+	 */
+	protected MessageTemplate resolveTemplate(String code, Locale locale) {
 		MessageFormat messageFormat = resolveCode(code, locale);
 		if (messageFormat != null) {
-			return messageFormat.format(new Object[0]);
+			return new MessageTemplate(messageFormat);
 		}
 		return null;
 	}
@@ -223,21 +386,24 @@ public abstract class AbstractMessageSource implements HierarchicalMessageSource
 	 * @param args array of arguments for a message
 	 * @param locale the locale to resolve through
 	 * @return an array of arguments with any MessageSourceResolvables resolved
+	 * (the given array itself if it doesn't contain any)
 	 */
 	protected Object[] resolveArguments(Object[] args, Locale locale) {
 		if (args == null) {
 			return new Object[0];
 		}
-		List resolvedArgs = new ArrayList(args.length);
+		Object[] resolvedArgs = args;
 		for (int i = 0; i < args.length; i++) {
 			if (args[i] instanceof MessageSourceResolvable) {
-				resolvedArgs.add(getMessage((MessageSourceResolvable) args[i], locale));
-			}
-			else {
-				resolvedArgs.add(args[i]);
+				if (resolvedArgs == args) {
+					// copy on first resolvable, leaving the caller's array untouched
+					resolvedArgs = new Object[args.length];
+					System.arraycopy(args, 0, resolvedArgs, 0, args.length);
+				}
+				resolvedArgs[i] = getMessage((MessageSourceResolvable) args[i], locale);
 			}
 		}
-		return resolvedArgs.toArray(new Object[resolvedArgs.size()]);
+		return resolvedArgs;
 	}
 
 	/**
@@ -259,6 +425,20 @@ public abstract class AbstractMessageSource implements HierarchicalMessageSource
 		return messageFormat;
 	}
 
+	/**
+	 * Create a MessageTemplate for the given message and Locale.
+	 * @param msg the message to create a MessageTemplate for
+	 * @param locale the Locale to create a MessageTemplate for
+	 * @return the MessageTemplate instance
+	 * @see #resolveTemplate
+	 */
+	protected MessageTemplate createMessageTemplate(String msg, Locale locale) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Creating MessageTemplate for pattern [" + msg + "] and locale '" + locale + "'");
+		}
+		return new MessageTemplate(msg, locale);
+	}
+
 
 	/**
 	 * Subclasses must implement this method to resolve a message.
@@ -275,4 +455,21 @@ public abstract class AbstractMessageSource implements HierarchicalMessageSource
 	 */
 	protected abstract MessageFormat resolveCode(String code, Locale locale);
 
+
+	/**
+	 * Ancestor MessageSource that resolved a code, along with the
+	 * hierarchy generation at the time of resolution.
+	 */
+	private static class ResolutionLocation {
+
+		private final AbstractMessageSource messageSource;
+
+		private final long generation;
+
+		public ResolutionLocation(AbstractMessageSource messageSource, long generation) {
+			this.messageSource = messageSource;
+			this.generation = generation;
+		}
+	}
+
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.support;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Symbol table for message codes, shared across all bundle files of a
+ * message source. Each distinct code is stored once and assigned a symbol id;
+ * the messages of a specific bundle file are kept as sorted arrays of symbol
+ * ids and values, instead of in a <code>java.util.Properties</code> instance
+ * with its own key Strings and hash entries. A file only holds entries for
+ * its own codes, so basenames with disjoint codes don't add up.
+ *
+ * <p>Symbol ids are never reassigned: Codes that got registered once
+ * remain in the table, even if a later reload of a file drops them.
+ * To get rid of such codes, the messages that are still in use can be
+ * converted into a fresh store. Looking up symbol ids doesn't require
+ * any locking.
+ *
+ * <p>Used by ReloadableResourceBundleMessageSource if its
+ * "compactMessageStore" flag is turned on.
+ *
+ * @see ReloadableResourceBundleMessageSource#setCompactMessageStore
+ */
+public class CompactMessageStore {
+
+	/** Map from code to Integer symbol id */
+	private final ConcurrentMap symbolIds = new ConcurrentHashMap();
+
+	private final AtomicInteger symbolCount = new AtomicInteger();
+
+
+	/**
+	 * Convert the given Properties into messages indexed by symbol id,
+	 * registering all codes that are not known yet.
+	 * @param props the Properties with message codes as keys
+	 * @return the messages of the given Properties
+	 */
+	public Messages compact(Properties props) {
+		int size = props.size();
+		String[] codes = new String[size];
+		String[] values = new String[size];
+		int count = 0;
+		for (Enumeration en = props.keys(); en.hasMoreElements() && count < size;) {
+			codes[count] = (String) en.nextElement();
+			values[count] = props.getProperty(codes[count]);
+			count++;
+		}
+		return createMessages(codes, values, count);
+	}
+
+	/**
+	 * Convert the given messages of another store into messages indexed
+	 * by the symbol ids of this store, registering their codes.
+	 * @param messages the messages to convert
+	 * @param codes the codes of the other store, indexed by symbol id
+	 * @return the converted messages
+	 * @see #getCodes
+	 */
+	public Messages compact(Messages messages, String[] codes) {
+		int count = messages.size();
+		String[] messageCodes = new String[count];
+		for (int i = 0; i < count; i++) {
+			messageCodes[i] = codes[messages.symbolIds[i]];
+		}
+		return createMessages(messageCodes, messages.values, count);
+	}
+
+	/**
+	 * Return the symbol id for the given code.
+	 * @param code the message code
+	 * @return the symbol id, or -1 if the code is not registered
+	 */
+	public int getSymbolId(String code) {
+		Integer id = (Integer) this.symbolIds.get(code);
+		return (id != null ? id.intValue() : -1);
+	}
+
+	/**
+	 * Return the number of symbol ids assigned so far.
+	 */
+	public int getSymbolCount() {
+		return this.symbolCount.get();
+	}
+
+	/**
+	 * Return all registered codes, indexed by symbol id.
+	 * @see #compact(Messages, String[])
+	 */
+	public String[] getCodes() {
+		String[] codes = new String[this.symbolCount.get()];
+		for (Iterator it = this.symbolIds.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			int id = ((Integer) entry.getValue()).intValue();
+			if (id < codes.length) {
+				codes[id] = (String) entry.getKey();
+			}
+		}
+		return codes;
+	}
+
+	private Messages createMessages(String[] codes, String[] values, int count) {
+		long[] entries = new long[count];
+		for (int i = 0; i < count; i++) {
+			// sort by symbol id, keeping track of the original position
+			entries[i] = ((long) registerSymbol(codes[i]) << 32) | i;
+		}
+		Arrays.sort(entries);
+		int[] ids = new int[count];
+		String[] sortedValues = new String[count];
+		for (int i = 0; i < count; i++) {
+			ids[i] = (int) (entries[i] >>> 32);
+			sortedValues[i] = values[(int) entries[i]];
+		}
+		return new Messages(ids, sortedValues);
+	}
+
+	private int registerSymbol(String code) {
+		Integer id = (Integer) this.symbolIds.get(code);
+		if (id == null) {
+			Integer newId = new Integer(this.symbolCount.getAndIncrement());
+			id = (Integer) this.symbolIds.putIfAbsent(code, newId);
+			if (id == null) {
+				id = newId;
+			}
+		}
+		return id.intValue();
+	}
+
+
+	/**
+	 * Immutable messages of a single bundle file, as symbol ids in
+	 * ascending order with their corresponding values.
+	 */
+	public static class Messages {
+
+		private final int[] symbolIds;
+
+		private final String[] values;
+
+		private Messages(int[] symbolIds, String[] values) {
+			this.symbolIds = symbolIds;
+			this.values = values;
+		}
+
+		/**
+		 * Return the message for the given symbol id.
+		 * @return the message, or null if not contained
+		 */
+		public String getMessage(int symbolId) {
+			if (symbolId < 0) {
+				return null;
+			}
+			int index = Arrays.binarySearch(this.symbolIds, symbolId);
+			return (index >= 0 ? this.values[index] : null);
+		}
+
+		/**
+		 * Return the number of messages.
+		 */
+		public int size() {
+			return this.symbolIds.length;
+		}
+	}
+
+}
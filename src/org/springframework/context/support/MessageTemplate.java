@@ -0,0 +1,253 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.context.support;
+
+import java.text.DateFormat;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Thread-safe, pre-parsed representation of a message pattern in
+ * <code>java.text.MessageFormat</code> syntax, producing the same
+ * output as a MessageFormat for the same pattern and Locale.
+ *
+ * <p>The pattern is analyzed once, on construction. Quotes are resolved
+ * upfront, and the message without arguments is computed right away, so
+ * a constant message (without any placeholders) is simply returned as-is.
+ * Patterns that only use simple placeholders like "{0}" are rendered by
+ * concatenating the literal parts with the stringified arguments, without
+ * involving a MessageFormat. Patterns with format types or styles, such as
+ * "{0,number,#.##}", are still delegated to a MessageFormat, synchronizing
+ * on it as MessageFormat isn't thread-safe.
+ *
+ * @see java.text.MessageFormat
+ * @see AbstractMessageSource#resolveTemplate
+ */
+public class MessageTemplate {
+
+	/** Message pattern (determined lazily if delegating to a given MessageFormat) */
+	private volatile String pattern;
+
+	private final Locale locale;
+
+	/** Literal parts, one more than the number of placeholders (null if delegating) */
+	private final String[] literals;
+
+	/** Argument index of each placeholder (null if delegating) */
+	private final int[] argumentIndexes;
+
+	/** MessageFormat for patterns that cannot be rendered directly */
+	private final MessageFormat messageFormat;
+
+	/** Message rendered without arguments (null if delegating to a shared MessageFormat) */
+	private final String messageWithoutArguments;
+
+
+	/**
+	 * Create a new MessageTemplate for the given pattern.
+	 * @param pattern the message pattern, in MessageFormat syntax
+	 * @param locale the Locale to format numbers and dates with
+	 * @throws IllegalArgumentException if the pattern is invalid
+	 */
+	public MessageTemplate(String pattern, Locale locale) throws IllegalArgumentException {
+		this.pattern = pattern;
+		this.locale = locale;
+		List literals = new ArrayList();
+		List argumentIndexes = new ArrayList();
+		if (parse(pattern, literals, argumentIndexes)) {
+			this.literals = (String[]) literals.toArray(new String[literals.size()]);
+			this.argumentIndexes = new int[argumentIndexes.size()];
+			for (int i = 0; i < this.argumentIndexes.length; i++) {
+				this.argumentIndexes[i] = ((Integer) argumentIndexes.get(i)).intValue();
+			}
+			this.messageFormat = null;
+			this.messageWithoutArguments = render(null);
+		}
+		else {
+			this.literals = null;
+			this.argumentIndexes = null;
+			this.messageFormat = new MessageFormat("");
+			this.messageFormat.setLocale(locale);
+			this.messageFormat.applyPattern(pattern);
+			this.messageWithoutArguments = this.messageFormat.format(new Object[0]);
+		}
+	}
+
+	/**
+	 * Create a new MessageTemplate for the given MessageFormat,
+	 * simply delegating to it. Cheap to create, as the pattern
+	 * only gets rendered if asked for.
+	 * @param messageFormat the MessageFormat to delegate to
+	 */
+	public MessageTemplate(MessageFormat messageFormat) {
+		this.locale = messageFormat.getLocale();
+		this.literals = null;
+		this.argumentIndexes = null;
+		this.messageFormat = messageFormat;
+		this.messageWithoutArguments = null;
+	}
+
+
+	/**
+	 * Return the message pattern.
+	 */
+	public String getPattern() {
+		if (this.pattern == null) {
+			synchronized (this.messageFormat) {
+				this.pattern = this.messageFormat.toPattern();
+			}
+		}
+		return this.pattern;
+	}
+
+	/**
+	 * Return the Locale to format numbers and dates with.
+	 */
+	public Locale getLocale() {
+		return locale;
+	}
+
+	/**
+	 * Return whether the message doesn't contain any placeholders,
+	 * i.e. is always rendered the same.
+	 */
+	public boolean isConstant() {
+		return (this.argumentIndexes != null && this.argumentIndexes.length == 0);
+	}
+
+	/**
+	 * Return the message rendered without arguments.
+	 * Placeholders remain as-is, just like with MessageFormat.
+	 */
+	public String formatWithoutArguments() {
+		if (this.messageWithoutArguments != null) {
+			return this.messageWithoutArguments;
+		}
+		return format(new Object[0]);
+	}
+
+	/**
+	 * Render the message with the given arguments.
+	 * @param args the arguments to fill in, or null
+	 * @return the rendered message
+	 */
+	public String format(Object[] args) {
+		if (this.messageFormat != null) {
+			synchronized (this.messageFormat) {
+				return this.messageFormat.format(args);
+			}
+		}
+		if (args == null || args.length == 0 || this.argumentIndexes.length == 0) {
+			return this.messageWithoutArguments;
+		}
+		return render(args);
+	}
+
+	private String render(Object[] args) {
+		if (this.argumentIndexes.length == 0) {
+			return this.literals[0];
+		}
+		StringBuffer sb = new StringBuffer(this.pattern.length() + 16 * this.argumentIndexes.length);
+		for (int i = 0; i < this.argumentIndexes.length; i++) {
+			sb.append(this.literals[i]);
+			int argumentIndex = this.argumentIndexes[i];
+			if (args == null || argumentIndex >= args.length) {
+				sb.append('{').append(argumentIndex).append('}');
+			}
+			else {
+				sb.append(formatArgument(args[argumentIndex]));
+			}
+		}
+		sb.append(this.literals[this.argumentIndexes.length]);
+		return sb.toString();
+	}
+
+	/**
+	 * Stringify the given argument the same way as MessageFormat does
+	 * for a placeholder without format type.
+	 */
+	private String formatArgument(Object arg) {
+		if (arg == null) {
+			return "null";
+		}
+		if (arg instanceof String) {
+			return (String) arg;
+		}
+		if (arg instanceof Number) {
+			return NumberFormat.getInstance(this.locale).format(arg);
+		}
+		if (arg instanceof Date) {
+			return DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, this.locale).format(arg);
+		}
+		String result = arg.toString();
+		return (result != null ? result : "null");
+	}
+
+	public String toString() {
+		return "MessageTemplate: pattern [" + getPattern() + "]";
+	}
+
+
+	/**
+	 * Parse the given pattern into literal parts and argument indexes,
+	 * resolving quotes according to MessageFormat rules.
+	 * @return whether the pattern only consists of literal text and simple
+	 * placeholders, i.e. whether it can be rendered without MessageFormat
+	 */
+	private static boolean parse(String pattern, List literals, List argumentIndexes) {
+		StringBuffer literal = new StringBuffer(pattern.length());
+		boolean inQuote = false;
+		int length = pattern.length();
+		for (int i = 0; i < length; i++) {
+			char c = pattern.charAt(i);
+			if (c == '\'') {
+				if (i + 1 < length && pattern.charAt(i + 1) == '\'') {
+					// escaped quote
+					literal.append('\'');
+					i++;
+				}
+				else {
+					inQuote = !inQuote;
+				}
+			}
+			else if (c == '{' && !inQuote) {
+				int end = i + 1;
+				while (end < length && Character.isDigit(pattern.charAt(end)) && pattern.charAt(end) < 128) {
+					end++;
+				}
+				if (end == i + 1 || end >= length || pattern.charAt(end) != '}' || end - i > 10) {
+					// format type or style, or invalid placeholder
+					return false;
+				}
+				literals.add(literal.toString());
+				literal.setLength(0);
+				argumentIndexes.add(Integer.valueOf(pattern.substring(i + 1, end)));
+				i = end;
+			}
+			else {
+				literal.append(c);
+			}
+		}
+		literals.add(literal.toString());
+		return true;
+	}
+
+}
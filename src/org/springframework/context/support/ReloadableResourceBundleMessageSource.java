@@ -27,6 +27,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.context.ResourceLoaderAware;
 import org.springframework.core.io.DefaultResourceLoader;
@@ -78,6 +80,7 @@ import org.springframework.util.StringUtils;
  * @see #setFileEncodings
  * @see #setPropertiesPersister
  * @see #setResourceLoader
+ * @see #setCompactMessageStore
  * @see org.springframework.util.DefaultPropertiesPersister
  * @see org.springframework.core.io.DefaultResourceLoader
  * @see ResourceBundleMessageSource
@@ -112,6 +115,11 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 
 	private ResourceLoader resourceLoader = new DefaultResourceLoader();
 
+	private boolean compactMessageStore = false;
+
+	/** Symbol table for message codes, shared across all files loaded since the last rebuild */
+	private volatile CompactMessageStore messageStore = new CompactMessageStore();
+
 
 	/**
 	 * Set a single basename, following the basic ResourceBundle convention of
@@ -217,6 +225,26 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 		this.resourceLoader = resourceLoader;
 	}
 
+	/**
+	 * Set whether to keep loaded messages in a compact store instead of
+	 * in a <code>java.util.Properties</code> instance per file.
+	 * <p>If turned on, message codes get stored once in a symbol table that is
+	 * shared across all files, with the messages of each file kept in an array
+	 * indexed by symbol id. Merged properties for a Locale are not copied but
+	 * rather resolved through the chain of files for that Locale. This reduces
+	 * heap consumption significantly for large bundles with many locales.
+	 * <p>The symbol table gets rebuilt on <code>clearCache</code>, and on reload
+	 * of a file once it holds more than twice as many codes as the cached files
+	 * have entries, dropping codes that are not in use anymore.
+	 * <p>Default is false. Note that PropertiesHolders for compact files do not
+	 * expose a Properties instance.
+	 * @see CompactMessageStore
+	 * @see #getMergedProperties
+	 */
+	public void setCompactMessageStore(boolean compactMessageStore) {
+		this.compactMessageStore = compactMessageStore;
+	}
+
 
 	protected String resolveCodeWithoutArguments(String code, Locale locale) {
 		if (this.cacheMillis < 0) {
@@ -266,10 +294,36 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 		return null;
 	}
 
+	protected MessageTemplate resolveTemplate(String code, Locale locale) {
+		if (this.cacheMillis < 0) {
+			PropertiesHolder propHolder = getMergedProperties(locale);
+			MessageTemplate result = propHolder.getMessageTemplate(code, locale);
+			if (result != null) {
+				return result;
+			}
+		}
+		else {
+			for (int i = 0; i < this.basenames.length; i++) {
+				List filenames = calculateAllFilenames(this.basenames[i], locale);
+				for (int j = 0; j < filenames.size(); j++) {
+					String filename = (String) filenames.get(j);
+					PropertiesHolder propHolder = getProperties(filename);
+					MessageTemplate result = propHolder.getMessageTemplate(code, locale);
+					if (result != null) {
+						return result;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Get a PropertiesHolder that contains the actually visible properties
 	 * for a Locale, after merging all specified resource bundles.
 	 * Either fetches the holder from the cache or freshly loads it.
+	 * <p>With a compact message store, the returned holder does not copy
+	 * any properties but rather delegates to the files in lookup order.
 	 * <p>Only used when caching resource bundle contents forever, i.e.
 	 * with cacheSeconds < 0. Therefore, merged properties are always
 	 * cached forever.
@@ -280,6 +334,23 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 			if (mergedHolder != null) {
 				return mergedHolder;
 			}
+			if (this.compactMessageStore) {
+				List chain = new ArrayList();
+				for (int i = 0; i < this.basenames.length; i++) {
+					List filenames = calculateAllFilenames(this.basenames[i], locale);
+					for (int j = 0; j < filenames.size(); j++) {
+						String filename = (String) filenames.get(j);
+						PropertiesHolder propHolder = getProperties(filename);
+						if (propHolder.hasProperties()) {
+							chain.add(propHolder);
+						}
+					}
+				}
+				mergedHolder = new MergedPropertiesHolder(
+						(PropertiesHolder[]) chain.toArray(new PropertiesHolder[chain.size()]));
+				this.cachedMergedProperties.put(locale, mergedHolder);
+				return mergedHolder;
+			}
 			Properties mergedProps = new Properties();
 			mergedHolder = new PropertiesHolder(mergedProps, -1);
 			for (int i = this.basenames.length - 1; i >= 0; i--) {
@@ -441,7 +512,13 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 					}
 					this.propertiesPersister.load(props, is);
 				}
-				propHolder = new PropertiesHolder(props, fileTimestamp);
+				if (this.compactMessageStore) {
+					CompactMessageStore store = this.messageStore;
+					propHolder = new CompactPropertiesHolder(store, store.compact(props), fileTimestamp);
+				}
+				else {
+					propHolder = new PropertiesHolder(props, fileTimestamp);
+				}
 			}
 			finally {
 				is.close();
@@ -456,10 +533,60 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 		}
 
 		propHolder.setRefreshTimestamp(refreshTimestamp);
-		this.cachedProperties.put(filename, propHolder);
+		if (this.cachedProperties.put(filename, propHolder) != null) {
+			// reloaded -> messages may have changed, and codes may have been dropped
+			if (this.compactMessageStore) {
+				pruneMessageStore();
+				propHolder = (PropertiesHolder) this.cachedProperties.get(filename);
+			}
+			invalidateResolutionCache();
+		}
 		return propHolder;
 	}
 
+	/**
+	 * Rebuild the symbol table from the cached files if it holds more than twice
+	 * as many codes as the cached files have entries, converting their messages
+	 * to a fresh CompactMessageStore. Holders that are still referenced elsewhere
+	 * keep working against the previous store.
+	 * <p>To be called with the lock on the cached properties held.
+	 */
+	private void pruneMessageStore() {
+		CompactMessageStore store = this.messageStore;
+		int entryCount = 0;
+		for (Iterator it = this.cachedProperties.values().iterator(); it.hasNext();) {
+			Object propHolder = it.next();
+			if (propHolder instanceof CompactPropertiesHolder) {
+				entryCount += ((CompactPropertiesHolder) propHolder).messages.size();
+			}
+		}
+		if (store.getSymbolCount() <= 2 * entryCount) {
+			return;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("Rebuilding message store with " + store.getSymbolCount() +
+					" codes for " + entryCount + " cached messages");
+		}
+		CompactMessageStore newStore = new CompactMessageStore();
+		Map codesPerStore = new HashMap();
+		for (Iterator it = this.cachedProperties.entrySet().iterator(); it.hasNext();) {
+			Map.Entry entry = (Map.Entry) it.next();
+			if (entry.getValue() instanceof CompactPropertiesHolder) {
+				CompactPropertiesHolder propHolder = (CompactPropertiesHolder) entry.getValue();
+				String[] codes = (String[]) codesPerStore.get(propHolder.store);
+				if (codes == null) {
+					codes = propHolder.store.getCodes();
+					codesPerStore.put(propHolder.store, codes);
+				}
+				PropertiesHolder newHolder = new CompactPropertiesHolder(
+						newStore, newStore.compact(propHolder.messages, codes), propHolder.getFileTimestamp());
+				newHolder.setRefreshTimestamp(propHolder.getRefreshTimestamp());
+				entry.setValue(newHolder);
+			}
+		}
+		this.messageStore = newStore;
+	}
+
 	/**
 	 * Clear the resource bundle cache.
 	 * Following resolve calls will lead to reloading of the properties files.
@@ -468,7 +595,10 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 		logger.info("Clearing resource bundle cache");
 		synchronized (this.cachedProperties) {
 			this.cachedProperties.clear();
+			// start over with the codes of the files that get loaded from now on
+			this.messageStore = new CompactMessageStore();
 		}
+		invalidateResolutionCache();
 	}
 
 	/**
@@ -482,6 +612,17 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 		}
 	}
 
+	/**
+	 * Resolution locations can only be cached when caching properties forever,
+	 * as this MessageSource needs to be asked in order to check for file changes.
+	 * Else, clearCache will invalidate cached resolution locations.
+	 * @see #setCacheSeconds
+	 * @see #clearCache
+	 */
+	protected boolean isResolutionCacheable() {
+		return (this.cacheMillis < 0);
+	}
+
 	public String toString() {
 		return getClass().getName() + ": basenames=[" + StringUtils.arrayToCommaDelimitedString(this.basenames) + "]";
 	}
@@ -504,6 +645,9 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 		/** Cache to hold already generated MessageFormats per message code */
 		private final Map cachedMessageFormats = new HashMap();
 
+		/** Cache to hold already created MessageTemplates per message code */
+		private final ConcurrentMap cachedMessageTemplates = new ConcurrentHashMap();
+
 		public PropertiesHolder(Properties properties, long fileTimestamp) {
 			this.properties = properties;
 			this.fileTimestamp = fileTimestamp;
@@ -516,6 +660,10 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 			return properties;
 		}
 
+		public boolean hasProperties() {
+			return (this.properties != null);
+		}
+
 		public long getFileTimestamp() {
 			return fileTimestamp;
 		}
@@ -536,7 +684,7 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 		}
 
 		public MessageFormat getMessageFormat(String code, Locale locale) {
-			if (this.properties == null) {
+			if (!hasProperties()) {
 				return null;
 			}
 			synchronized (this.cachedMessageFormats) {
@@ -547,7 +695,7 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 						return result;
 					}
 				}
-				String msg = this.properties.getProperty(code);
+				String msg = getProperty(code);
 				if (msg != null) {
 					if (localeMap == null) {
 						localeMap = new HashMap();
@@ -560,6 +708,107 @@ public class ReloadableResourceBundleMessageSource extends AbstractMessageSource
 				return null;
 			}
 		}
+
+		public MessageTemplate getMessageTemplate(String code, Locale locale) {
+			if (!hasProperties()) {
+				return null;
+			}
+			ConcurrentMap localeMap = (ConcurrentMap) this.cachedMessageTemplates.get(code);
+			if (localeMap != null) {
+				MessageTemplate result = (MessageTemplate) localeMap.get(locale);
+				if (result != null) {
+					return result;
+				}
+			}
+			String msg = getProperty(code);
+			if (msg != null) {
+				if (localeMap == null) {
+					localeMap = new ConcurrentHashMap();
+					ConcurrentMap existing = (ConcurrentMap) this.cachedMessageTemplates.putIfAbsent(code, localeMap);
+					if (existing != null) {
+						localeMap = existing;
+					}
+				}
+				MessageTemplate result = createMessageTemplate(msg, locale);
+				MessageTemplate existing = (MessageTemplate) localeMap.putIfAbsent(locale, result);
+				return (existing != null ? existing : result);
+			}
+			return null;
+		}
+	}
+
+
+	/**
+	 * PropertiesHolder that keeps the messages of a file keyed
+	 * by the symbol ids of the shared CompactMessageStore
+	 * that the file was loaded into.
+	 */
+	protected class CompactPropertiesHolder extends PropertiesHolder {
+
+		private final CompactMessageStore store;
+
+		private final CompactMessageStore.Messages messages;
+
+		public CompactPropertiesHolder(CompactMessageStore store, CompactMessageStore.Messages messages, long fileTimestamp) {
+			super(null, fileTimestamp);
+			this.store = store;
+			this.messages = messages;
+		}
+
+		public boolean hasProperties() {
+			return true;
+		}
+
+		public String getProperty(String code) {
+			return getProperty(this.store.getSymbolId(code));
+		}
+
+		public String getProperty(int symbolId) {
+			return this.messages.getMessage(symbolId);
+		}
+	}
+
+
+	/**
+	 * PropertiesHolder that resolves codes through a chain of file holders,
+	 * in lookup order, instead of holding a merged copy of their properties.
+	 */
+	protected class MergedPropertiesHolder extends PropertiesHolder {
+
+		private final PropertiesHolder[] chain;
+
+		public MergedPropertiesHolder(PropertiesHolder[] chain) {
+			super(null, -1);
+			this.chain = chain;
+		}
+
+		public boolean hasProperties() {
+			return true;
+		}
+
+		public String getProperty(String code) {
+			// resolve the symbol id once per store, i.e. usually once for the entire chain
+			CompactMessageStore store = null;
+			int symbolId = -1;
+			for (int i = 0; i < this.chain.length; i++) {
+				String result = null;
+				if (this.chain[i] instanceof CompactPropertiesHolder) {
+					CompactPropertiesHolder propHolder = (CompactPropertiesHolder) this.chain[i];
+					if (propHolder.store != store) {
+						store = propHolder.store;
+						symbolId = store.getSymbolId(code);
+					}
+					result = propHolder.getProperty(symbolId);
+				}
+				else {
+					result = this.chain[i].getProperty(code);
+				}
+				if (result != null) {
+					return result;
+				}
+			}
+			return null;
+		}
 	}
 
 }
@@ -17,11 +17,11 @@
 package org.springframework.context.support;
 
 import java.text.MessageFormat;
-import java.util.HashMap;
 import java.util.Locale;
-import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.util.StringUtils;
 
@@ -34,6 +34,13 @@ import org.springframework.util.StringUtils;
  * As this MessageSource relies on ResourceBundle, it faces the same limitation.
  * Consider ReloadableResourceBundleMessageSource for an alternative.
  *
+ * <p>Loaded bundles and generated MessageFormats are cached in concurrent maps,
+ * so that message lookups don't lock. A bundle that could not be found is cached
+ * as well, as are codes that a bundle doesn't define: With multiple basenames,
+ * a miss in one bundle doesn't cause a classpath search or a
+ * MissingResourceException on every lookup. Each bundle is loaded
+ * by one thread only, with concurrent callers waiting for its result.
+ *
  * @author Rod Johnson
  * @author Juergen Hoeller
  * @see #setBasenames
@@ -42,18 +49,29 @@ import org.springframework.util.StringUtils;
  */
 public class ResourceBundleMessageSource extends AbstractMessageSource {
 
+	/**
+	 * Maximum number of missing codes to remember per bundle. Codes are
+	 * supplied by callers, so further misses just don't get cached.
+	 */
+	private static final int MISSING_CODES_CACHE_LIMIT = 1024;
+
 	private String[] basenames;
 
 	private ClassLoader classLoader;
 
-	private final Map cachedResourceBundles = new HashMap();
+	/**
+	 * Cache to hold loaded ResourceBundles per basename.
+	 * Note that this Map contains a Map of BundleHolders, keyed with the Locale.
+	 * @see #getResourceBundle
+	 */
+	private final ConcurrentMap cachedResourceBundles = new ConcurrentHashMap();
 
 	/**
-	 * Cache to hold already generated MessageFormats per message code.
-	 * Note that this Map contains the actual code Map, keyed with the Locale.
-	 * @see #getMessageFormat
+	 * Cache to hold already created MessageTemplates and missing codes per bundle.
+	 * Note that this Map contains BundleMessages, keyed with the ResourceBundle.
+	 * @see #getMessageTemplate
 	 */
-	private final Map cachedMessageFormats = new HashMap();
+	private final ConcurrentMap cachedBundleMessages = new ConcurrentHashMap();
 
 
 	/**
@@ -100,7 +118,7 @@ public class ResourceBundleMessageSource extends AbstractMessageSource {
 		for (int i = 0; result == null && i < this.basenames.length; i++) {
 			ResourceBundle bundle = getResourceBundle(this.basenames[i], locale);
 			if (bundle != null) {
-				result = getStringOrNull(bundle, code);
+				result = getStringOrNull(bundle, code, getBundleMessages(bundle));
 			}
 		}
 		return result;
@@ -117,6 +135,17 @@ public class ResourceBundleMessageSource extends AbstractMessageSource {
 		return messageFormat;
 	}
 
+	protected MessageTemplate resolveTemplate(String code, Locale locale) {
+		MessageTemplate template = null;
+		for (int i = 0; template == null && i < this.basenames.length; i++) {
+			ResourceBundle bundle = getResourceBundle(this.basenames[i], locale);
+			if (bundle != null) {
+				template = getMessageTemplate(bundle, code, locale);
+			}
+		}
+		return template;
+	}
+
 	/**
 	 * Return a ResourceBundle for the given basename and code,
 	 * fetching already generated MessageFormats from the cache.
@@ -126,42 +155,65 @@ public class ResourceBundleMessageSource extends AbstractMessageSource {
 	 * found for the given basename and Locale
 	 */
 	protected ResourceBundle getResourceBundle(String basename, Locale locale) {
-		synchronized (this.cachedResourceBundles) {
-			Map localeMap = (Map) this.cachedResourceBundles.get(basename);
-			if (localeMap != null) {
-				ResourceBundle bundle = (ResourceBundle) localeMap.get(locale);
-				if (bundle != null) {
-					return bundle;
-				}
+		ConcurrentMap localeMap = (ConcurrentMap) this.cachedResourceBundles.get(basename);
+		if (localeMap == null) {
+			localeMap = new ConcurrentHashMap();
+			ConcurrentMap existing = (ConcurrentMap) this.cachedResourceBundles.putIfAbsent(basename, localeMap);
+			if (existing != null) {
+				localeMap = existing;
 			}
-			try {
-				ClassLoader cl = this.classLoader;
-				if (cl == null) {
-					// no class loader specified -> use thread context class loader
-					cl = Thread.currentThread().getContextClassLoader();
-				}
-				ResourceBundle bundle = ResourceBundle.getBundle(basename, locale, cl);
-				if (localeMap == null) {
-					localeMap = new HashMap();
-					this.cachedResourceBundles.put(basename, localeMap);
-				}
-				localeMap.put(locale, bundle);
-				return bundle;
+		}
+		BundleHolder holder = (BundleHolder) localeMap.get(locale);
+		if (holder == null) {
+			holder = new BundleHolder();
+			BundleHolder existing = (BundleHolder) localeMap.putIfAbsent(locale, holder);
+			if (existing != null) {
+				holder = existing;
 			}
-			catch (MissingResourceException ex) {
-				if (logger.isWarnEnabled()) {
-					logger.warn("ResourceBundle [" + basename + "] not found for MessageSource: " + ex.getMessage());
+		}
+		if (!holder.loaded) {
+			synchronized (holder) {
+				if (!holder.loaded) {
+					holder.bundle = loadResourceBundle(basename, locale);
+					holder.loaded = true;
 				}
-				// assume bundle not found
-				// -> do NOT throw the exception to allow for checking parent message source
-				return null;
 			}
 		}
+		return holder.bundle;
 	}
 
 	/**
-	 * Return a MessageFormat for the given bundle and code,
-	 * fetching already generated MessageFormats from the cache.
+	 * Load the ResourceBundle for the given basename and Locale.
+	 * Called once per basename and Locale; the result is cached,
+	 * including a null result.
+	 * @param basename the basename of the ResourceBundle
+	 * @param locale the Locale to find the ResourceBundle for
+	 * @return the resulting ResourceBundle, or null if none
+	 * found for the given basename and Locale
+	 */
+	private ResourceBundle loadResourceBundle(String basename, Locale locale) {
+		try {
+			ClassLoader cl = this.classLoader;
+			if (cl == null) {
+				// no class loader specified -> use thread context class loader
+				cl = Thread.currentThread().getContextClassLoader();
+			}
+			return ResourceBundle.getBundle(basename, locale, cl);
+		}
+		catch (MissingResourceException ex) {
+			if (logger.isWarnEnabled()) {
+				logger.warn("ResourceBundle [" + basename + "] not found for MessageSource: " + ex.getMessage());
+			}
+			// assume bundle not found
+			// -> do NOT throw the exception to allow for checking parent message source
+			return null;
+		}
+	}
+
+	/**
+	 * Return a MessageFormat for the given bundle and code.
+	 * <p>MessageFormats are not cached, as messages get resolved through
+	 * cached MessageTemplates; this is only used by <code>resolveCode</code>.
 	 * @param bundle the ResourceBundle to work on
 	 * @param code the message code to retrieve
 	 * @param locale the Locale to use to build the MessageFormat
@@ -171,49 +223,85 @@ public class ResourceBundleMessageSource extends AbstractMessageSource {
 	protected MessageFormat getMessageFormat(ResourceBundle bundle, String code, Locale locale)
 			throws MissingResourceException {
 
-		synchronized (this.cachedMessageFormats) {
-			Map codeMap = (Map) this.cachedMessageFormats.get(bundle);
-			Map localeMap = null;
-			if (codeMap != null) {
-				localeMap = (Map) codeMap.get(code);
-				if (localeMap != null) {
-					MessageFormat result = (MessageFormat) localeMap.get(locale);
-					if (result != null) {
-						return result;
-					}
-				}
+		String msg = getStringOrNull(bundle, code, getBundleMessages(bundle));
+		if (msg != null) {
+			return createMessageFormat(msg, locale);
+		}
+		return null;
+	}
+
+	/**
+	 * Return a MessageTemplate for the given bundle and code,
+	 * fetching already created MessageTemplates from the cache.
+	 * @return the resulting MessageTemplate, or null if no message
+	 * defined for the given code
+	 */
+	private MessageTemplate getMessageTemplate(ResourceBundle bundle, String code, Locale locale) {
+		BundleMessages bundleMessages = getBundleMessages(bundle);
+		ConcurrentMap localeMap = (ConcurrentMap) bundleMessages.messageTemplates.get(code);
+		if (localeMap != null) {
+			MessageTemplate result = (MessageTemplate) localeMap.get(locale);
+			if (result != null) {
+				return result;
 			}
+		}
 
-			String msg = getStringOrNull(bundle, code);
-			if (msg != null) {
-				if (codeMap == null) {
-					codeMap = new HashMap();
-					this.cachedMessageFormats.put(bundle, codeMap);
+		String msg = getStringOrNull(bundle, code, bundleMessages);
+		if (msg != null) {
+			if (localeMap == null) {
+				localeMap = new ConcurrentHashMap();
+				ConcurrentMap existing = (ConcurrentMap) bundleMessages.messageTemplates.putIfAbsent(code, localeMap);
+				if (existing != null) {
+					localeMap = existing;
 				}
-				if (localeMap == null) {
-					localeMap = new HashMap();
-					codeMap.put(code, localeMap);
-				}
-				MessageFormat result = createMessageFormat(msg, locale);
-				localeMap.put(locale, result);
-				return result;
+			}
+			MessageTemplate result = createMessageTemplate(msg, locale);
+			MessageTemplate existing = (MessageTemplate) localeMap.putIfAbsent(locale, result);
+			return (existing != null ? existing : result);
+		}
+		return null;
+	}
 
+	/**
+	 * Return the cached message data for the given bundle.
+	 */
+	private BundleMessages getBundleMessages(ResourceBundle bundle) {
+		BundleMessages bundleMessages = (BundleMessages) this.cachedBundleMessages.get(bundle);
+		if (bundleMessages == null) {
+			bundleMessages = new BundleMessages();
+			BundleMessages existing = (BundleMessages) this.cachedBundleMessages.putIfAbsent(bundle, bundleMessages);
+			if (existing != null) {
+				bundleMessages = existing;
 			}
-			return null;
 		}
+		return bundleMessages;
 	}
 
-	private String getStringOrNull(ResourceBundle bundle, String key) {
+	private String getStringOrNull(ResourceBundle bundle, String key, BundleMessages bundleMessages) {
+		if (bundleMessages.missingCodes.containsKey(key)) {
+			return null;
+		}
 		try {
 			return bundle.getString(key);
 		}
 		catch (MissingResourceException ex) {
 			// assume key not found
 			// -> do NOT throw the exception to allow for checking parent message source
+			if (bundleMessages.missingCodes.size() < MISSING_CODES_CACHE_LIMIT) {
+				bundleMessages.missingCodes.put(key, Boolean.TRUE);
+			}
 			return null;
 		}
 	}
 
+	/**
+	 * ResourceBundles cannot be reloaded,
+	 * so resolution locations can be cached forever.
+	 */
+	protected boolean isResolutionCacheable() {
+		return true;
+	}
+
 	/**
 	 * Show the configuration of this MessageSource.
 	 */
@@ -221,4 +309,29 @@ public class ResourceBundleMessageSource extends AbstractMessageSource {
 		return getClass().getName() + ": basenames=[" + StringUtils.arrayToCommaDelimitedString(this.basenames) + "]";
 	}
 
+
+	/**
+	 * Holder for the ResourceBundle of a basename and Locale,
+	 * with null as bundle if none was found.
+	 */
+	private static class BundleHolder {
+
+		private volatile boolean loaded = false;
+
+		private volatile ResourceBundle bundle;
+	}
+
+
+	/**
+	 * Created MessageTemplates and missing codes of a ResourceBundle.
+	 */
+	private static class BundleMessages {
+
+		/** Map from code to Map from Locale to MessageTemplate */
+		private final ConcurrentMap messageTemplates = new ConcurrentHashMap();
+
+		/** Codes that the bundle doesn't define, up to MISSING_CODES_CACHE_LIMIT */
+		private final ConcurrentMap missingCodes = new ConcurrentHashMap();
+	}
+
 }
@@ -35,10 +35,16 @@ public class StaticMessageSource extends AbstractMessageSource {
 
 	private final Map messages = new HashMap();
 
+	private final Map templates = new HashMap();
+
 	protected MessageFormat resolveCode(String code, Locale locale) {
 		return (MessageFormat) this.messages.get(code + "_" + locale.toString());
 	}
 
+	protected MessageTemplate resolveTemplate(String code, Locale locale) {
+		return (MessageTemplate) this.templates.get(code + "_" + locale.toString());
+	}
+
 	/**
 	 * Associate the given message with the given code.
 	 * @param code the lookup code
@@ -46,12 +52,23 @@ public class StaticMessageSource extends AbstractMessageSource {
 	 * @param message the message associated with this lookup code
 	 */
 	public void addMessage(String code, Locale locale, String message) {
-		this.messages.put(code + "_" + locale.toString(), new MessageFormat(message));
+		MessageFormat messageFormat = new MessageFormat(message);
+		this.messages.put(code + "_" + locale.toString(), messageFormat);
+		this.templates.put(code + "_" + locale.toString(), new MessageTemplate(message, messageFormat.getLocale()));
+		invalidateResolutionCache();
 		if (logger.isInfoEnabled()) {
 			logger.info("Added message [" + message + "] for code [" + code + "] and Locale [" + locale + "]");
 		}
 	}
 
+	/**
+	 * Messages only change through addMessage, which invalidates
+	 * cached resolution locations.
+	 */
+	protected boolean isResolutionCacheable() {
+		return true;
+	}
+
 	public String toString() {
 		return getClass().getName() + ": " + this.messages;
 	}
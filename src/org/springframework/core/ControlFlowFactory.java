@@ -18,6 +18,12 @@ package org.springframework.core;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Static factory to conceal automatic choice of Java 1.4 or 1.3 ControlFlow
@@ -25,18 +31,198 @@ import java.io.StringWriter;
  *
  * <p>We want to use the more efficient Java 1.4 StackTraceElement if we can,
  * but we don't want to impose a runtime dependency on JDK 1.4.
+ * A ControlFlow that walks the stack lazily through
+ * <code>java.lang.StackWalker</code> can be requested explicitly,
+ * on a JVM that provides it.
  *
  * @author Rod Johnson
  * @since 02.02.2004
  */
 public abstract class ControlFlowFactory {
-	
+
+	private static final String STACK_WALKER_CLASS_NAME = "java.lang.StackWalker";
+
+	private static boolean stackWalkerAvailable;
+
+	static {
+		// check whether we're running on a JVM with StackWalker (Java 9 or later)
+		try {
+			Class.forName(STACK_WALKER_CLASS_NAME);
+			stackWalkerAvailable = true;
+		}
+		catch (ClassNotFoundException ex) {
+			stackWalkerAvailable = false;
+		}
+	}
+
 	public static ControlFlow createControlFlow() {
 		return JdkVersion.getMajorJavaVersion() >= JdkVersion.JAVA_14 ?
 				(ControlFlow) new Jdk14ControlFlow() :
 				(ControlFlow) new Jdk13ControlFlow();
 	}
 
+	/**
+	 * Create a ControlFlow that walks the stack via <code>java.lang.StackWalker</code>
+	 * when checked, instead of capturing it on creation. Checks that match early
+	 * are an order of magnitude cheaper than with the default implementation,
+	 * and checks without match still cheaper. However, <code>underToken</code>
+	 * needs to resolve a StackTraceElement per frame, which makes it more
+	 * expensive than the default for tokens that match late or not at all.
+	 * Note that its semantics differ slightly: see StackWalkerControlFlow.
+	 * @throws IllegalStateException if StackWalker is not available (before Java 9)
+	 * @see #createControlFlow
+	 */
+	public static ControlFlow createStackWalkerControlFlow() {
+		if (!stackWalkerAvailable) {
+			throw new IllegalStateException("java.lang.StackWalker not available on this JVM");
+		}
+		return new StackWalkerControlFlow();
+	}
+
+
+	/**
+	 * Utilities for cflow-style pointcuts, walking the stack lazily through
+	 * <code>java.lang.StackWalker</code>. Frames are only inspected on demand,
+	 * and each check stops at the first matching frame: Neither a full
+	 * stack trace nor its String rendering are ever created.
+	 * <p>Accesses StackWalker through MethodHandles that get bound once, as this
+	 * class needs to compile against Java 8. The instance itself serves as the
+	 * walk function, so class and method name checks don't allocate anything
+	 * beyond the stream.
+	 * The stack gets walked when a check is performed, which corresponds to the
+	 * point of creation for the usual create-and-check usage. Like the stack
+	 * it refers to, an instance is meant to be used by a single thread.
+	 * <p>In contrast to the stack trace based implementations, reflection frames
+	 * are hidden, and <code>underToken</code> matches a token against
+	 * individual frames (rendered like in a stack trace) rather than against
+	 * the entire trace.
+	 * @see java.lang.StackWalker
+	 */
+	static class StackWalkerControlFlow implements ControlFlow, Function {
+
+		/** StackWalker.walk(Function), bound to the StackWalker instance */
+		private static final MethodHandle walkHandle;
+
+		/** StackFrame.getClassName(), taking the frame as Object */
+		private static final MethodHandle getClassNameHandle;
+
+		/** StackFrame.getMethodName(), taking the frame as Object */
+		private static final MethodHandle getMethodNameHandle;
+
+		/** StackFrame.toStackTraceElement(), taking the frame as Object */
+		private static final MethodHandle toStackTraceElementHandle;
+
+		static {
+			try {
+				Class stackWalkerClass = Class.forName(STACK_WALKER_CLASS_NAME);
+				Class stackFrameClass = Class.forName(STACK_WALKER_CLASS_NAME + "$StackFrame");
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				Object stackWalker = lookup.findStatic(
+						stackWalkerClass, "getInstance", MethodType.methodType(stackWalkerClass)).invoke();
+				walkHandle = lookup.findVirtual(
+						stackWalkerClass, "walk", MethodType.methodType(Object.class, Function.class)).bindTo(stackWalker);
+				getClassNameHandle = lookup.findVirtual(
+						stackFrameClass, "getClassName", MethodType.methodType(String.class)).asType(
+						MethodType.methodType(String.class, Object.class));
+				getMethodNameHandle = lookup.findVirtual(
+						stackFrameClass, "getMethodName", MethodType.methodType(String.class)).asType(
+						MethodType.methodType(String.class, Object.class));
+				toStackTraceElementHandle = lookup.findVirtual(
+						stackFrameClass, "toStackTraceElement", MethodType.methodType(StackTraceElement.class)).asType(
+						MethodType.methodType(StackTraceElement.class, Object.class));
+			}
+			catch (Throwable ex) {
+				throw new IllegalStateException("Could not access java.lang.StackWalker: " + ex);
+			}
+		}
+
+		/** Criteria of the current check: class name to match, or null */
+		private String className;
+
+		/** Criteria of the current check: method name to match, or null */
+		private String methodName;
+
+		/** Criteria of the current check: token to find in the rendered frame, or null */
+		private String token;
+
+		public boolean under(Class clazz) {
+			return walk(clazz.getName(), null, null);
+		}
+
+		/**
+		 * Matches whole method name.
+		 */
+		public boolean under(Class clazz, String methodName) {
+			return walk(clazz.getName(), methodName, null);
+		}
+
+		/**
+		 * Leave it up to the caller to decide what matches.
+		 * Caller must understand stack trace format, so there's less abstraction.
+		 */
+		public boolean underToken(String token) {
+			return walk(null, null, token);
+		}
+
+		/**
+		 * Walk the current stack until a frame matches all given criteria.
+		 * @param className the class name to match, or null
+		 * @param methodName the method name to match, or null
+		 * @param token the token to find in the rendered frame, or null
+		 * @return whether a matching frame has been found
+		 */
+		private boolean walk(String className, String methodName, String token) {
+			this.className = className;
+			this.methodName = methodName;
+			this.token = token;
+			try {
+				return ((Boolean) (Object) walkHandle.invokeExact((Function) this)).booleanValue();
+			}
+			catch (RuntimeException ex) {
+				throw ex;
+			}
+			catch (Error err) {
+				throw err;
+			}
+			catch (Throwable ex) {
+				throw new IllegalStateException("StackWalker threw exception: " + ex);
+			}
+		}
+
+		/**
+		 * Check the given stream of stack frames against the criteria of the
+		 * current check, stopping at the first match.
+		 * @param frames a Stream of StackWalker.StackFrame objects
+		 * @return Boolean.TRUE if a matching frame has been found
+		 */
+		public Object apply(Object frames) {
+			try {
+				for (Iterator it = ((Stream) frames).iterator(); it.hasNext();) {
+					Object frame = it.next();
+					if ((this.className == null || this.className.equals((String) getClassNameHandle.invokeExact(frame))) &&
+							(this.methodName == null || this.methodName.equals((String) getMethodNameHandle.invokeExact(frame))) &&
+							(this.token == null || ((StackTraceElement) toStackTraceElementHandle.invokeExact(frame)).toString().indexOf(this.token) != -1)) {
+						return Boolean.TRUE;
+					}
+				}
+				return Boolean.FALSE;
+			}
+			catch (RuntimeException ex) {
+				throw ex;
+			}
+			catch (Error err) {
+				throw err;
+			}
+			catch (Throwable ex) {
+				throw new IllegalStateException("StackFrame access threw exception: " + ex);
+			}
+		}
+
+		public String toString() {
+			return "StackWalkerControlFlow";
+		}
+	}
+
 
 	/**
 	 * Utilities for cflow-style pointcuts. Note that such pointcuts are
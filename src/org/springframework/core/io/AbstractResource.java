@@ -5,9 +5,16 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
-public abstract class AbstractResource implements Resource {
+import org.springframework.util.FileCopyUtils;
+
+public abstract class AbstractResource implements ChannelResource {
 	
 	public boolean exists() {
 		// try file existence
@@ -37,6 +44,45 @@ public abstract class AbstractResource implements Resource {
 		throw new FileNotFoundException(getDescription() + " cannot be resolved to absolute file path");
 	}
 	
+	public ReadableByteChannel getReadableChannel() throws IOException {
+		File file = null;
+		try {
+			file = getFile();
+		} catch (IOException ex) {
+			// not resolvable to a file -> fall back to stream-backed channel
+			return Channels.newChannel(getInputStream());
+		}
+		return openFileChannel(file);
+	}
+	
+	public ByteBuffer getByteBuffer() throws IOException {
+		File file = null;
+		try {
+			file = getFile();
+		} catch (IOException ex) {
+			// not resolvable to a file -> fall back to reading the stream into a heap buffer
+			return ByteBuffer.wrap(FileCopyUtils.copyToByteArray(getInputStream())).asReadOnlyBuffer();
+		}
+		return mapFile(file);
+	}
+	
+	protected FileChannel openFileChannel(File file) throws IOException {
+		return new RandomAccessFile(file, "r").getChannel();
+	}
+	
+	protected ByteBuffer mapFile(File file) throws IOException {
+		FileChannel channel = openFileChannel(file);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(getDescription() + " is too large to be mapped into memory");
+			}
+			// the mapping stays valid after closing the channel
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+	}
+	
 	public Resource createRelative(String relativePath) throws IOException {
 		throw new FileNotFoundException("Cannot create a relative resource for " + getDescription());
 	}
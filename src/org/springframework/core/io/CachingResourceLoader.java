@@ -0,0 +1,510 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.core.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.util.Assert;
+
+/**
+ * ResourceLoader decorator that caches resolved URLs, existence results
+ * and the content of small resources, keyed by resource location.
+ * Repeated existence checks and reads of the same location are then served
+ * from memory instead of opening the underlying resource again.
+ *
+ * <p>Entries for resources that resolve to a file in the file system are
+ * validated against the file's last-modified timestamp, at most once per
+ * "revalidationInterval". Entries for other resources (for example class path
+ * resources within jar files) are considered immutable until
+ * <code>clearCache()</code> gets called.
+ *
+ * <p>The cache is bounded by the number of locations and by the total size
+ * of cached content, evicting the least recently used locations first.
+ * Resources larger than "maxContentSize" are never held in memory.
+ *
+ * <p>Can be passed to GenericApplicationContext's <code>setResourceLoader</code>
+ * method, or used standalone.
+ *
+ * @see DefaultResourceLoader
+ * @see org.springframework.context.support.GenericApplicationContext#setResourceLoader
+ */
+public class CachingResourceLoader implements ResourceLoader {
+
+	/** Default maximum size of a single cached resource content: 64 KB */
+	public static final int DEFAULT_MAX_CONTENT_SIZE = 64 * 1024;
+
+	/** Default maximum total size of cached content: 4 MB */
+	public static final long DEFAULT_MAX_CACHE_SIZE = 4 * 1024 * 1024;
+
+	/** Default maximum number of cached locations */
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	private final ResourceLoader targetResourceLoader;
+
+	private int maxContentSize = DEFAULT_MAX_CONTENT_SIZE;
+
+	private long maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	private long revalidationInterval = 0;
+
+	/** Map from location String to CachedResource, in access order */
+	private final LinkedHashMap cachedResources = new LinkedHashMap(16, 0.75f, true);
+
+	/** Total size of cached content, guarded by cachedResources */
+	private long cacheSize = 0;
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+
+	/**
+	 * Create a new CachingResourceLoader for a DefaultResourceLoader.
+	 * @see DefaultResourceLoader
+	 */
+	public CachingResourceLoader() {
+		this(new DefaultResourceLoader());
+	}
+
+	/**
+	 * Create a new CachingResourceLoader for the given ResourceLoader.
+	 * @param targetResourceLoader the ResourceLoader to resolve locations with
+	 */
+	public CachingResourceLoader(ResourceLoader targetResourceLoader) {
+		Assert.notNull(targetResourceLoader, "targetResourceLoader is required");
+		this.targetResourceLoader = targetResourceLoader;
+	}
+
+	/**
+	 * Return the ResourceLoader that this loader delegates to.
+	 */
+	public ResourceLoader getTargetResourceLoader() {
+		return targetResourceLoader;
+	}
+
+	/**
+	 * Set the maximum size in bytes of a single resource's content
+	 * to keep in memory. Default is 64 KB. Specify 0 to not cache content
+	 * at all, just URLs and existence results.
+	 */
+	public void setMaxContentSize(int maxContentSize) {
+		this.maxContentSize = maxContentSize;
+	}
+
+	/**
+	 * Set the maximum total size in bytes of cached content.
+	 * Default is 4 MB.
+	 */
+	public void setMaxCacheSize(long maxCacheSize) {
+		this.maxCacheSize = maxCacheSize;
+	}
+
+	/**
+	 * Set the maximum number of locations to keep cached.
+	 * Default is 1024.
+	 */
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Set the number of milliseconds between last-modified checks for
+	 * file-based resources. Default is 0, checking the timestamp on each
+	 * access (which is a plain file system stat, not an open).
+	 * A negative value means to never revalidate, just like for
+	 * non-file resources.
+	 */
+	public void setRevalidationInterval(long revalidationInterval) {
+		this.revalidationInterval = revalidationInterval;
+	}
+
+
+	/**
+	 * Return a caching handle for the given location. Repeated calls for the
+	 * same location return the same handle, as long as it is still cached.
+	 */
+	public Resource getResource(String location) {
+		Assert.notNull(location, "location is required");
+		synchronized (this.cachedResources) {
+			CachedResource resource = (CachedResource) this.cachedResources.get(location);
+			if (resource == null) {
+				resource = new CachedResource(this.targetResourceLoader.getResource(location));
+				this.cachedResources.put(location, resource);
+				trimToSize();
+			}
+			return resource;
+		}
+	}
+
+	/**
+	 * Clear all cached URLs, existence results and contents.
+	 * Resource handles obtained before will not cache anymore;
+	 * call <code>getResource</code> again to get a fresh handle.
+	 */
+	public void clearCache() {
+		synchronized (this.cachedResources) {
+			for (Iterator it = this.cachedResources.values().iterator(); it.hasNext();) {
+				CachedResource resource = (CachedResource) it.next();
+				resource.invalidate();
+				resource.accountedSize = 0;
+			}
+			this.cachedResources.clear();
+			this.cacheSize = 0;
+		}
+	}
+
+	/**
+	 * Return the number of accesses served from the cache.
+	 */
+	public long getHitCount() {
+		return this.hitCount.sum();
+	}
+
+	/**
+	 * Return the number of accesses that had to go to the underlying resource.
+	 */
+	public long getMissCount() {
+		return this.missCount.sum();
+	}
+
+	/**
+	 * Return the number of currently cached locations.
+	 */
+	public int getCachedResourceCount() {
+		synchronized (this.cachedResources) {
+			return this.cachedResources.size();
+		}
+	}
+
+	/**
+	 * Return the total size in bytes of currently cached content.
+	 */
+	public long getCacheSize() {
+		synchronized (this.cachedResources) {
+			return this.cacheSize;
+		}
+	}
+
+	/**
+	 * Account for a change in the given resource's cached content, evicting
+	 * least recently used locations if necessary. Must not be called with
+	 * a CachedResource lock held, as it locks the resources involved.
+	 */
+	private void contentChanged(CachedResource resource) {
+		synchronized (this.cachedResources) {
+			long size = resource.getContentSize();
+			this.cacheSize += size - resource.accountedSize;
+			resource.accountedSize = size;
+			trimToSize();
+		}
+	}
+
+	private void trimToSize() {
+		Iterator it = this.cachedResources.values().iterator();
+		while ((this.cacheSize > this.maxCacheSize || this.cachedResources.size() > this.maxEntries) && it.hasNext()) {
+			CachedResource eldest = (CachedResource) it.next();
+			it.remove();
+			eldest.invalidate();
+			this.cacheSize -= eldest.accountedSize;
+			eldest.accountedSize = 0;
+		}
+	}
+
+
+	/**
+	 * Resource handle that caches the state of the target resource.
+	 * All state is guarded by the handle itself; the handle's lock
+	 * is never held while locking the loader's cache.
+	 */
+	private class CachedResource extends AbstractResource {
+
+		private final Resource target;
+
+		private boolean resolved = false;
+
+		private boolean evicted = false;
+
+		private URL url;
+
+		private File file;
+
+		private boolean exists;
+
+		private long lastModified;
+
+		private long lastChecked;
+
+		private byte[] content;
+
+		/** Content size accounted in the cache size, guarded by cachedResources */
+		private long accountedSize = 0;
+
+		public CachedResource(Resource target) {
+			this.target = target;
+		}
+
+		public boolean exists() {
+			synchronized (this) {
+				if (validate()) {
+					hitCount.increment();
+					return this.exists;
+				}
+			}
+			missCount.increment();
+			return resolve().exists;
+		}
+
+		public URL getURL() throws IOException {
+			synchronized (this) {
+				if (validate()) {
+					hitCount.increment();
+					return urlOrThrow();
+				}
+			}
+			missCount.increment();
+			return resolve().urlOrThrow();
+		}
+
+		public File getFile() throws IOException {
+			synchronized (this) {
+				if (validate()) {
+					hitCount.increment();
+					return fileOrThrow();
+				}
+			}
+			missCount.increment();
+			return resolve().fileOrThrow();
+		}
+
+		public InputStream getInputStream() throws IOException {
+			byte[] content = getContent();
+			if (content != null) {
+				return new ByteArrayInputStream(content);
+			}
+			if (!isValid()) {
+				resolve();
+			}
+			return readContent();
+		}
+
+		public ReadableByteChannel getReadableChannel() throws IOException {
+			byte[] content = getContent();
+			if (content != null) {
+				return Channels.newChannel(new ByteArrayInputStream(content));
+			}
+			if (this.target instanceof ChannelResource) {
+				return ((ChannelResource) this.target).getReadableChannel();
+			}
+			return super.getReadableChannel();
+		}
+
+		public ByteBuffer getByteBuffer() throws IOException {
+			byte[] content = getContent();
+			if (content != null) {
+				return ByteBuffer.wrap(content).asReadOnlyBuffer();
+			}
+			if (this.target instanceof ChannelResource) {
+				return ((ChannelResource) this.target).getByteBuffer();
+			}
+			return super.getByteBuffer();
+		}
+
+		public boolean isOpen() {
+			return this.target.isOpen();
+		}
+
+		public Resource createRelative(String relativePath) throws IOException {
+			return this.target.createRelative(relativePath);
+		}
+
+		public String getFilename() {
+			return this.target.getFilename();
+		}
+
+		public String getDescription() {
+			return this.target.getDescription();
+		}
+
+		private synchronized boolean isValid() {
+			return validate();
+		}
+
+		/**
+		 * Return the cached content, or null if not cached (yet).
+		 */
+		private byte[] getContent() {
+			synchronized (this) {
+				if (validate() && this.content != null) {
+					hitCount.increment();
+					return this.content;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Open the target resource, caching its content if small enough.
+		 * Content beyond the maximum size gets streamed from the target.
+		 */
+		private InputStream readContent() throws IOException {
+			missCount.increment();
+			InputStream is = this.target.getInputStream();
+			int limit = maxContentSize;
+			byte[] buffer = new byte[Math.min(limit + 1, 4096)];
+			int length = 0;
+			int read = 0;
+			while (length <= limit && (read = is.read(buffer, length, buffer.length - length)) != -1) {
+				length += read;
+				if (length == buffer.length && length <= limit) {
+					byte[] newBuffer = new byte[Math.min(limit + 1, buffer.length * 2)];
+					System.arraycopy(buffer, 0, newBuffer, 0, length);
+					buffer = newBuffer;
+				}
+			}
+			if (read != -1) {
+				// too large to cache: replay what we have read, then continue with the target stream
+				return new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), is);
+			}
+			is.close();
+			byte[] content = new byte[length];
+			System.arraycopy(buffer, 0, content, 0, length);
+			boolean cached = false;
+			synchronized (this) {
+				if (validate()) {
+					this.content = content;
+					cached = true;
+				}
+			}
+			if (cached) {
+				contentChanged(this);
+			}
+			return new ByteArrayInputStream(content);
+		}
+
+		/**
+		 * Check whether the cached state is still valid, checking the
+		 * file timestamp if due. Must be called with this handle locked.
+		 */
+		private boolean validate() {
+			if (!this.resolved) {
+				return false;
+			}
+			if (this.file == null || revalidationInterval < 0) {
+				return true;
+			}
+			long now = System.currentTimeMillis();
+			if (now - this.lastChecked < revalidationInterval) {
+				return true;
+			}
+			this.lastChecked = now;
+			if (this.file.lastModified() == this.lastModified) {
+				return true;
+			}
+			this.resolved = false;
+			return false;
+		}
+
+		/**
+		 * Resolve URL, file and existence of the target resource,
+		 * dropping any cached content.
+		 */
+		private CachedResource resolve() {
+			URL url = null;
+			try {
+				url = this.target.getURL();
+			} catch (IOException ex) {
+				// not resolvable to URL -> cache as such
+			}
+			File file = null;
+			try {
+				file = this.target.getFile();
+			} catch (IOException ex) {
+				// not resolvable to file -> cache as such
+			}
+			long lastModified = (file != null ? file.lastModified() : 0);
+			boolean exists = (file != null ? file.exists() : this.target.exists());
+			boolean dropped = false;
+			synchronized (this) {
+				this.url = url;
+				this.file = file;
+				this.exists = exists;
+				this.lastModified = lastModified;
+				this.lastChecked = System.currentTimeMillis();
+				if (this.content != null) {
+					this.content = null;
+					dropped = true;
+				}
+				// evicted handles keep passing through to the target
+				this.resolved = !this.evicted;
+			}
+			if (dropped) {
+				contentChanged(this);
+			}
+			return this;
+		}
+
+		/**
+		 * Drop all cached state, on eviction from the cache.
+		 */
+		private synchronized void invalidate() {
+			this.content = null;
+			this.resolved = false;
+			this.evicted = true;
+		}
+
+		private synchronized long getContentSize() {
+			return (this.content != null ? this.content.length : 0);
+		}
+
+		private synchronized URL urlOrThrow() throws FileNotFoundException {
+			if (this.url == null) {
+				throw new FileNotFoundException(getDescription() + " cannot be resolved to URL");
+			}
+			return this.url;
+		}
+
+		private synchronized File fileOrThrow() throws FileNotFoundException {
+			if (this.file == null) {
+				throw new FileNotFoundException(getDescription() + " cannot be resolved to absolute file path");
+			}
+			return this.file;
+		}
+
+		public boolean equals(Object obj) {
+			return (obj == this || this.target.equals(obj));
+		}
+
+		public int hashCode() {
+			return this.target.hashCode();
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+
+package org.springframework.core.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Extension of the Resource interface for resources that offer NIO access
+ * to their content. Implemented by AbstractResource, so callers can check
+ * for this interface before falling back to getInputStream.
+ */
+public interface ChannelResource extends Resource {
+
+	ReadableByteChannel getReadableChannel() throws IOException;
+
+	ByteBuffer getByteBuffer() throws IOException;
+
+}
@@ -6,6 +6,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 import org.springframework.util.Assert;
 import org.springframework.util.ResourceUtils;
@@ -44,6 +46,14 @@ public class FileSystemResource extends AbstractResource {
 		return file;
 	}
 
+	public ReadableByteChannel getReadableChannel() throws IOException {
+		return openFileChannel(file);
+	}
+
+	public ByteBuffer getByteBuffer() throws IOException {
+		return mapFile(file);
+	}
+
 	public Resource createRelative(String relativePath) {
 		String pathToUse = StringUtils.applyRelativePath(path, relativePath);
 		return new FileSystemResource(pathToUse);
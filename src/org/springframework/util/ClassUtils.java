@@ -16,9 +16,16 @@
 
 package org.springframework.util;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Miscellaneous class utility methods. Mainly for internal use within the
@@ -43,6 +50,30 @@ public abstract class ClassUtils {
 	/** The inner class separator character '$' */
 	private static final char INNER_CLASS_SEPARATOR_CHAR = '$';
 
+	/** Map from primitive type name to primitive Class */
+	private static final Map primitiveClassNameMap = new HashMap(16);
+
+	/** Maximum number of unresolvable class names to remember per ClassLoader */
+	private static final int MISSING_CLASSES_CACHE_LIMIT = 256;
+
+	/**
+	 * Resolved classes per ClassLoader: Map from weak ClassLoaderKey
+	 * to ClassCache. Read without locking.
+	 */
+	private static final ConcurrentMap classCache = new ConcurrentHashMap();
+
+	/** Queue for ClassLoaderKeys whose ClassLoader has been garbage-collected */
+	private static final ReferenceQueue staleClassLoaders = new ReferenceQueue();
+
+	/** Resolved classes for the bootstrap ClassLoader, i.e. a null ClassLoader */
+	private static final ClassCache bootstrapClassCache = new ClassCache();
+
+	static {
+		for (int i = 0; i < PRIMITIVE_CLASSES.length; i++) {
+			primitiveClassNameMap.put(PRIMITIVE_CLASSES[i].getName(), PRIMITIVE_CLASSES[i]);
+		}
+	}
+
 
 	/**
 	 * Replacement for <code>Class.forName()</code> that also returns Class instances
@@ -50,28 +81,105 @@ public abstract class ClassUtils {
 	 * <p>Always uses the thread context class loader.
 	 * @param name the name of the Class
 	 * @return Class instance for the supplied name
+	 * @see #forName(String, ClassLoader)
 	 * @see java.lang.Class#forName
 	 * @see java.lang.Thread#getContextClassLoader
 	 */
-	public static Class forName(String name) throws ClassNotFoundException{
+	public static Class forName(String name) throws ClassNotFoundException {
+		return forName(name, Thread.currentThread().getContextClassLoader());
+	}
+
+	/**
+	 * Replacement for <code>Class.forName()</code> that also returns Class instances
+	 * for primitives (like "int") and array class names (like "String[]" or
+	 * "int[][]").
+	 * <p>Resolved classes are cached per ClassLoader, as are a limited number of
+	 * class names that could not be resolved: A subsequent call for such a name
+	 * throws a ClassNotFoundException right away, with the original exception
+	 * as cause. The cache does not keep ClassLoaders or classes from being
+	 * garbage-collected.
+	 * @param name the name of the Class
+	 * @param classLoader the ClassLoader to use, or null for the bootstrap ClassLoader
+	 * @return Class instance for the supplied name
+	 * @see #clearClassCache
+	 * @see java.lang.Class#forName(String, boolean, ClassLoader)
+	 */
+	public static Class forName(String name, ClassLoader classLoader) throws ClassNotFoundException {
 		// Most class names will be quite long, considering that they
 		// SHOULD sit in a package, so a length check is worthwhile.
 		if (name.length() <= 8) {
 			// could be a primitive - likely
-			for (int i = 0; i < PRIMITIVE_CLASSES.length; i++) {
-				Class clazz = PRIMITIVE_CLASSES[i];
-				if (clazz.getName().equals(name)) {
-					return clazz;
-				}
+			Class clazz = (Class) primitiveClassNameMap.get(name);
+			if (clazz != null) {
+				return clazz;
+			}
+		}
+		ClassCache cache = getClassCache(classLoader);
+		Reference cached = (Reference) cache.classes.get(name);
+		if (cached != null) {
+			Class clazz = (Class) cached.get();
+			if (clazz != null) {
+				return clazz;
 			}
 		}
-		if (name.endsWith(ARRAY_SUFFIX)) {
-			// special handling for array class names
-			String elementClassName = name.substring(0, name.length() - ARRAY_SUFFIX.length());
-			Class elementClass = Class.forName(elementClassName, true, Thread.currentThread().getContextClassLoader());
-			return Array.newInstance(elementClass, 0).getClass();
+		ClassNotFoundException missing = (ClassNotFoundException) cache.missingClasses.get(name);
+		if (missing != null) {
+			throw new ClassNotFoundException(name, missing);
 		}
-		return Class.forName(name, true, Thread.currentThread().getContextClassLoader());
+		Class clazz = null;
+		try {
+			if (name.endsWith(ARRAY_SUFFIX)) {
+				// special handling for array class names, possibly multi-dimensional
+				String elementClassName = name.substring(0, name.length() - ARRAY_SUFFIX.length());
+				Class elementClass = forName(elementClassName, classLoader);
+				clazz = Array.newInstance(elementClass, 0).getClass();
+			}
+			else {
+				clazz = Class.forName(name, true, classLoader);
+			}
+		}
+		catch (ClassNotFoundException ex) {
+			if (cache.missingClasses.size() < MISSING_CLASSES_CACHE_LIMIT) {
+				cache.missingClasses.put(name, ex);
+			}
+			throw ex;
+		}
+		cache.classes.put(name, new WeakReference(clazz));
+		return clazz;
+	}
+
+	/**
+	 * Return the cache of resolved classes for the given ClassLoader.
+	 */
+	private static ClassCache getClassCache(ClassLoader classLoader) {
+		if (classLoader == null) {
+			return bootstrapClassCache;
+		}
+		ClassCache cache = (ClassCache) classCache.get(new ClassLoaderKey(classLoader, null));
+		if (cache == null) {
+			// remove caches of garbage-collected ClassLoaders
+			Object staleKey;
+			while ((staleKey = staleClassLoaders.poll()) != null) {
+				classCache.remove(staleKey);
+			}
+			cache = new ClassCache();
+			ClassCache existing = (ClassCache) classCache.putIfAbsent(
+					new ClassLoaderKey(classLoader, staleClassLoaders), cache);
+			if (existing != null) {
+				cache = existing;
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Clear the cache of resolved classes, for example after classes
+	 * have been made available that could not be resolved before.
+	 */
+	public static void clearClassCache() {
+		classCache.clear();
+		bootstrapClassCache.classes.clear();
+		bootstrapClassCache.missingClasses.clear();
 	}
 
 	/**
@@ -198,4 +306,47 @@ public abstract class ClassUtils {
 		return clazz.getPackage().getName().replace('.', '/');
 	}
 
+
+	/**
+	 * Resolved classes and unresolvable class names of a ClassLoader.
+	 */
+	private static class ClassCache {
+
+		/** Map from class name to WeakReference to the Class */
+		private final Map classes = new ConcurrentHashMap();
+
+		/** Map from class name to the original ClassNotFoundException */
+		private final Map missingClasses = new ConcurrentHashMap();
+	}
+
+
+	/**
+	 * Weak reference to a ClassLoader for use as Map key,
+	 * comparing ClassLoaders by identity.
+	 */
+	private static class ClassLoaderKey extends WeakReference {
+
+		private final int hashCode;
+
+		public ClassLoaderKey(ClassLoader classLoader, ReferenceQueue queue) {
+			super(classLoader, queue);
+			this.hashCode = System.identityHashCode(classLoader);
+		}
+
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof ClassLoaderKey)) {
+				return false;
+			}
+			Object classLoader = get();
+			return (classLoader != null && classLoader == ((ClassLoaderKey) other).get());
+		}
+
+		public int hashCode() {
+			return this.hashCode;
+		}
+	}
+
 }
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe implementation of the ResponseTimeMonitor interface,
+ * recording response times with nanosecond precision.
+ *
+ * <p>In contrast to ResponseTimeMonitorImpl, this class does not lose updates
+ * under concurrent access, and its totals do not overflow: Access count and total
+ * response time are kept in striped <code>LongAdder</code> accumulators, best and
+ * worst response times are maintained via compare-and-set.
+ *
+ * <p>All response times also get recorded into a log-bucketed histogram, with
+ * 32 sub-buckets per power of two (that is, a relative precision of about 3%).
+ * This allows for percentile queries like p50, p95, p99 and p99.9. In addition,
+ * a configurable number of rolling time windows is maintained, exposing the same
+ * statistics for recent response times only.
+ *
+ * <p>Recording does not allocate any objects on the caller's thread, apart from
+ * the occasional stripe that the accumulators create under contention.
+ * Concurrent rollover of a time window may drop a few recordings for that window;
+ * the overall statistics are not affected by this.
+ *
+ * @see ResponseTimeMonitorImpl
+ * @see java.util.concurrent.atomic.LongAdder
+ */
+public class ConcurrentResponseTimeMonitor implements ResponseTimeMonitor {
+
+	/** Default length of a rolling time window: 1 minute */
+	public static final long DEFAULT_WINDOW_MILLIS = 60 * 1000;
+
+	/** Default number of rolling time windows: 5 */
+	public static final int DEFAULT_WINDOW_COUNT = 5;
+
+	private static final long NANOS_PER_MILLI = 1000 * 1000;
+
+
+	/** The system time at which this object was initialized */
+	private final long initedMillis;
+
+	private final LongAdder accessCount = new LongAdder();
+
+	private final LongAdder totalResponseTimeNanos = new LongAdder();
+
+	private final AtomicLong bestResponseTimeNanos = new AtomicLong(Long.MAX_VALUE);
+
+	private final AtomicLong worstResponseTimeNanos = new AtomicLong(Long.MIN_VALUE);
+
+	private final Histogram histogram = new Histogram();
+
+	private final long windowNanos;
+
+	private final Histogram[] windows;
+
+	/** Epoch (time since start divided by window length) per window slot */
+	private final AtomicLongArray windowEpochs;
+
+	private final long initedNanos;
+
+
+	/**
+	 * Create a new ConcurrentResponseTimeMonitor with 5 rolling windows of 1 minute.
+	 */
+	public ConcurrentResponseTimeMonitor() {
+		this(DEFAULT_WINDOW_MILLIS, DEFAULT_WINDOW_COUNT);
+	}
+
+	/**
+	 * Create a new ConcurrentResponseTimeMonitor.
+	 * @param windowMillis the length of each rolling time window in milliseconds
+	 * @param windowCount the number of rolling time windows to keep
+	 */
+	public ConcurrentResponseTimeMonitor(long windowMillis, int windowCount) {
+		Assert.isTrue(windowMillis > 0, "windowMillis must be positive");
+		Assert.isTrue(windowCount > 0, "windowCount must be positive");
+		this.initedMillis = System.currentTimeMillis();
+		this.initedNanos = System.nanoTime();
+		this.windowNanos = windowMillis * NANOS_PER_MILLI;
+		this.windows = new Histogram[windowCount];
+		this.windowEpochs = new AtomicLongArray(windowCount);
+		for (int i = 0; i < windowCount; i++) {
+			this.windows[i] = new Histogram();
+			this.windowEpochs.set(i, i);
+		}
+	}
+
+
+	/**
+	 * Return the date when this object was loaded.
+	 */
+	public Date getLoadDate() {
+		return new Date(this.initedMillis);
+	}
+
+	/**
+	 * Return the number of milliseconds since this object was loaded.
+	 */
+	public long getUptimeMillis() {
+		return System.currentTimeMillis() - this.initedMillis;
+	}
+
+	/**
+	 * Record the given response time in milliseconds.
+	 * @param responseTimeMillis the response time of this request
+	 * @see #recordResponseTimeNanos
+	 */
+	public void recordResponseTime(long responseTimeMillis) {
+		recordResponseTimeNanos(responseTimeMillis * NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Record the given response time in nanoseconds,
+	 * typically measured via <code>System.nanoTime()</code>.
+	 * Negative values are treated as 0.
+	 * @param responseTimeNanos the response time of this request
+	 */
+	public void recordResponseTimeNanos(long responseTimeNanos) {
+		if (responseTimeNanos < 0) {
+			responseTimeNanos = 0;
+		}
+		this.accessCount.increment();
+		this.totalResponseTimeNanos.add(responseTimeNanos);
+		long best = this.bestResponseTimeNanos.get();
+		while (responseTimeNanos < best && !this.bestResponseTimeNanos.compareAndSet(best, responseTimeNanos)) {
+			best = this.bestResponseTimeNanos.get();
+		}
+		long worst = this.worstResponseTimeNanos.get();
+		while (responseTimeNanos > worst && !this.worstResponseTimeNanos.compareAndSet(worst, responseTimeNanos)) {
+			worst = this.worstResponseTimeNanos.get();
+		}
+		this.histogram.record(responseTimeNanos);
+		currentWindow().record(responseTimeNanos);
+	}
+
+
+	/**
+	 * Return the number of hits this object has handled,
+	 * capped at <code>Integer.MAX_VALUE</code>.
+	 * @see #getTotalAccessCount
+	 */
+	public int getAccessCount() {
+		return (int) Math.min(getTotalAccessCount(), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Return the number of hits this object has handled.
+	 */
+	public long getTotalAccessCount() {
+		return this.accessCount.sum();
+	}
+
+	/**
+	 * Return the sum of all recorded response times in nanoseconds.
+	 */
+	public long getTotalResponseTimeNanos() {
+		return this.totalResponseTimeNanos.sum();
+	}
+
+	public int getAverageResponseTimeMillis() {
+		return toMillis(getAverageResponseTimeNanos());
+	}
+
+	public int getBestResponseTimeMillis() {
+		long best = this.bestResponseTimeNanos.get();
+		return (best != Long.MAX_VALUE ? toMillis(best) : Integer.MAX_VALUE);
+	}
+
+	public int getWorstResponseTimeMillis() {
+		long worst = this.worstResponseTimeNanos.get();
+		return (worst != Long.MIN_VALUE ? toMillis(worst) : Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Return the average response time in nanoseconds.
+	 */
+	public long getAverageResponseTimeNanos() {
+		long count = getTotalAccessCount();
+		// avoid division by 0
+		if (count == 0) {
+			return 0;
+		}
+		return getTotalResponseTimeNanos() / count;
+	}
+
+	/**
+	 * Return the best (lowest) response time in nanoseconds,
+	 * or -1 if nothing has been recorded yet.
+	 */
+	public long getBestResponseTimeNanos() {
+		long best = this.bestResponseTimeNanos.get();
+		return (best != Long.MAX_VALUE ? best : -1);
+	}
+
+	/**
+	 * Return the worst (slowest) response time in nanoseconds,
+	 * or -1 if nothing has been recorded yet.
+	 */
+	public long getWorstResponseTimeNanos() {
+		long worst = this.worstResponseTimeNanos.get();
+		return (worst != Long.MIN_VALUE ? worst : -1);
+	}
+
+	/**
+	 * Return the response time in nanoseconds that the given percentage
+	 * of all recorded responses did not exceed, e.g. 99.9 for p999.
+	 * The result is accurate to about 3% of the actual value.
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the response time, or 0 if nothing has been recorded yet
+	 */
+	public long getPercentileNanos(double percentile) {
+		return this.histogram.getPercentile(percentile, getWorstResponseTimeNanos());
+	}
+
+	/**
+	 * Return the number of hits within the rolling time windows.
+	 */
+	public long getRecentAccessCount() {
+		long epoch = currentEpoch();
+		long count = 0;
+		for (int i = 0; i < this.windows.length; i++) {
+			if (isRecent(this.windowEpochs.get(i), epoch)) {
+				count += this.windows[i].getTotalCount();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Return the response time in nanoseconds that the given percentage
+	 * of responses within the rolling time windows did not exceed.
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the response time, or 0 if nothing has been recorded recently
+	 * @see #getPercentileNanos
+	 */
+	public long getRecentPercentileNanos(double percentile) {
+		long epoch = currentEpoch();
+		Histogram recent = new Histogram();
+		for (int i = 0; i < this.windows.length; i++) {
+			if (isRecent(this.windowEpochs.get(i), epoch)) {
+				recent.add(this.windows[i]);
+			}
+		}
+		return recent.getPercentile(percentile, getWorstResponseTimeNanos());
+	}
+
+
+	private Histogram currentWindow() {
+		long epoch = currentEpoch();
+		int slot = (int) (epoch % this.windows.length);
+		long slotEpoch = this.windowEpochs.get(slot);
+		if (slotEpoch != epoch && this.windowEpochs.compareAndSet(slot, slotEpoch, epoch)) {
+			// we won the rollover race: discard the outdated window content
+			this.windows[slot].reset();
+		}
+		return this.windows[slot];
+	}
+
+	private long currentEpoch() {
+		return (System.nanoTime() - this.initedNanos) / this.windowNanos;
+	}
+
+	private boolean isRecent(long slotEpoch, long currentEpoch) {
+		return (slotEpoch <= currentEpoch && slotEpoch > currentEpoch - this.windows.length);
+	}
+
+	private static int toMillis(long nanos) {
+		return (int) Math.min(nanos / NANOS_PER_MILLI, Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * Return a human-readable string showing the performance
+	 * data recorded by this object.
+	 */
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		sb.append("hits=[").append(getTotalAccessCount()).append("]; ");
+		sb.append("average=[").append(getAverageResponseTimeNanos()).append("ns]; ");
+		sb.append("best=[").append(getBestResponseTimeNanos()).append("ns]; ");
+		sb.append("worst=[").append(getWorstResponseTimeNanos()).append("ns]; ");
+		sb.append("p50=[").append(getPercentileNanos(50)).append("ns]; ");
+		sb.append("p95=[").append(getPercentileNanos(95)).append("ns]; ");
+		sb.append("p99=[").append(getPercentileNanos(99)).append("ns]; ");
+		sb.append("p999=[").append(getPercentileNanos(99.9)).append("ns]");
+		return sb.toString();
+	}
+
+
+	/**
+	 * Log-bucketed histogram of non-negative long values. Values below 32 get
+	 * an exact bucket each; larger values share a bucket with all values that
+	 * have the same 5 most significant bits following the highest one-bit.
+	 */
+	private static class Histogram {
+
+		private static final int SUB_BUCKET_BITS = 5;
+
+		private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+		private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+		public void record(long value) {
+			this.counts.incrementAndGet(indexFor(value));
+		}
+
+		public void add(Histogram other) {
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				long count = other.counts.get(i);
+				if (count != 0) {
+					this.counts.addAndGet(i, count);
+				}
+			}
+		}
+
+		public void reset() {
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				this.counts.set(i, 0);
+			}
+		}
+
+		public long getTotalCount() {
+			long total = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				total += this.counts.get(i);
+			}
+			return total;
+		}
+
+		/**
+		 * Return the highest value of the bucket that contains the given
+		 * percentile, capped at the given maximum value.
+		 */
+		public long getPercentile(double percentile, long maxValue) {
+			long total = getTotalCount();
+			if (total == 0) {
+				return 0;
+			}
+			double fraction = Math.min(Math.max(percentile, 0.0), 100.0) / 100.0;
+			long target = Math.max((long) Math.ceil(fraction * total), 1);
+			long seen = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				seen += this.counts.get(i);
+				if (seen >= target) {
+					long value = highestValueFor(i);
+					return (maxValue >= 0 ? Math.min(value, maxValue) : value);
+				}
+			}
+			return maxValue;
+		}
+
+		private static int indexFor(long value) {
+			if (value < SUB_BUCKET_COUNT) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int shift = exponent - SUB_BUCKET_BITS;
+			int mantissa = (int) (value >>> shift);
+			return (shift + 1) * SUB_BUCKET_COUNT + (mantissa - SUB_BUCKET_COUNT);
+		}
+
+		private static long highestValueFor(int index) {
+			if (index < SUB_BUCKET_COUNT) {
+				return index;
+			}
+			int shift = index / SUB_BUCKET_COUNT - 1;
+			long mantissa = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+			long next = (mantissa + 1) << shift;
+			return (next > 0 ? next - 1 : Long.MAX_VALUE);
+		}
+	}
+
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe stop watch for timing hot code paths with nanosecond precision,
+ * aggregating count, total, minimum and maximum time per task name.
+ * Companion to StopWatch, which keeps a list of individual task executions
+ * and can only be used from a single thread.
+ *
+ * <p>Timings can be recorded in two styles:
+ * <ul>
+ * <li><code>start(taskName)</code>/<code>stop()</code>, tracking the current
+ * task per thread, just like StopWatch does for a single thread;
+ * <li><code>long start = start()</code> and <code>stop(taskName, start)</code>,
+ * keeping the start time on the caller's stack.
+ * </ul>
+ *
+ * <p>Once a task name is known, neither style allocates any objects per
+ * start/stop: Aggregates are kept in striped <code>LongAdder</code> accumulators,
+ * and the per-thread state for the first style is created once per thread.
+ * Use <code>getTask(taskName)</code> to obtain a Task handle that skips the
+ * lookup by name entirely.
+ *
+ * <p>Reports follow the style of StopWatch's <code>shortSummary</code>
+ * and <code>prettyPrint</code>, listing tasks in registration order.
+ *
+ * @see StopWatch
+ * @see System#nanoTime
+ */
+public class ConcurrentStopWatch {
+
+	/**
+	 * Identifier of this stop watch.
+	 * Handy when we have output from multiple stop watches
+	 * and need to distinguish between them in log or console output.
+	 */
+	private final String id;
+
+	/** Map from task name to Task */
+	private final Map tasks = new ConcurrentHashMap();
+
+	/** List of Task objects, in registration order */
+	private final List taskList = new ArrayList();
+
+	/** Current task and start time per thread */
+	private final ThreadLocal currentTiming = new ThreadLocal() {
+		protected Object initialValue() {
+			return new Timing();
+		}
+	};
+
+
+	/**
+	 * Construct a new stop watch.
+	 */
+	public ConcurrentStopWatch() {
+		this.id = "";
+	}
+
+	/**
+	 * Construct a new stop watch with the given id.
+	 * @param id identifier for this stop watch.
+	 * Handy when we have output from multiple stop watches
+	 * and need to distinguish between them.
+	 */
+	public ConcurrentStopWatch(String id) {
+		this.id = id;
+	}
+
+
+	/**
+	 * Return the Task for the given name, registering it if necessary.
+	 * Callers on hot paths can keep the returned handle.
+	 * @param taskName the name of the task
+	 * @return the Task (never null)
+	 */
+	public Task getTask(String taskName) {
+		Task task = (Task) this.tasks.get(taskName);
+		if (task == null) {
+			synchronized (this.taskList) {
+				task = (Task) this.tasks.get(taskName);
+				if (task == null) {
+					task = new Task(taskName);
+					this.tasks.put(taskName, task);
+					this.taskList.add(task);
+				}
+			}
+		}
+		return task;
+	}
+
+	/**
+	 * Start a named task on the current thread.
+	 * @param taskName the name of the task to start
+	 * @throws IllegalStateException if a task is already running on this thread
+	 * @see #stop()
+	 */
+	public void start(String taskName) throws IllegalStateException {
+		Timing timing = (Timing) this.currentTiming.get();
+		if (timing.task != null) {
+			throw new IllegalStateException("Can't start ConcurrentStopWatch: it's already running on this thread");
+		}
+		timing.task = getTask(taskName);
+		timing.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Stop the current task of the current thread, recording its time.
+	 * @return the time taken by the task in nanoseconds
+	 * @throws IllegalStateException if no task is running on this thread
+	 * @see #start(String)
+	 */
+	public long stop() throws IllegalStateException {
+		long endNanos = System.nanoTime();
+		Timing timing = (Timing) this.currentTiming.get();
+		if (timing.task == null) {
+			throw new IllegalStateException("Can't stop ConcurrentStopWatch: it's not running on this thread");
+		}
+		long timeNanos = endNanos - timing.startNanos;
+		timing.task.record(timeNanos);
+		timing.task = null;
+		return timeNanos;
+	}
+
+	/**
+	 * Return whether a task is currently running on the current thread.
+	 */
+	public boolean isRunning() {
+		return (((Timing) this.currentTiming.get()).task != null);
+	}
+
+	/**
+	 * Return a start timestamp for a subsequent <code>stop(taskName, start)</code>
+	 * call. Does not involve any per-thread state.
+	 * @see #stop(String, long)
+	 */
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record the time since the given start timestamp for the given task.
+	 * @param taskName the name of the task
+	 * @param startNanos the start timestamp, as returned by <code>start()</code>
+	 * @return the time taken by the task in nanoseconds
+	 * @see #start()
+	 */
+	public long stop(String taskName, long startNanos) {
+		long timeNanos = System.nanoTime() - startNanos;
+		getTask(taskName).record(timeNanos);
+		return timeNanos;
+	}
+
+
+	/**
+	 * Return the total time in nanoseconds for all tasks.
+	 */
+	public long getTotalTimeNanos() {
+		Task[] tasks = getTasks();
+		long total = 0;
+		for (int i = 0; i < tasks.length; i++) {
+			total += tasks[i].getTotalTimeNanos();
+		}
+		return total;
+	}
+
+	/**
+	 * Return the total time in milliseconds for all tasks.
+	 */
+	public long getTotalTimeMillis() {
+		return getTotalTimeNanos() / 1000000;
+	}
+
+	/**
+	 * Return the total time in seconds for all tasks.
+	 */
+	public double getTotalTimeSeconds() {
+		return getTotalTimeNanos() / 1000000000.0;
+	}
+
+	/**
+	 * Return the number of task executions timed, across all tasks.
+	 */
+	public long getTaskCount() {
+		Task[] tasks = getTasks();
+		long count = 0;
+		for (int i = 0; i < tasks.length; i++) {
+			count += tasks[i].getCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Return all registered tasks, in registration order.
+	 */
+	public Task[] getTasks() {
+		synchronized (this.taskList) {
+			return (Task[]) this.taskList.toArray(new Task[this.taskList.size()]);
+		}
+	}
+
+	/**
+	 * Reset the aggregated data of all tasks, keeping the tasks registered.
+	 */
+	public void reset() {
+		Task[] tasks = getTasks();
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i].reset();
+		}
+	}
+
+
+	/**
+	 * Return a short description of the total running time.
+	 */
+	public String shortSummary() {
+		return "ConcurrentStopWatch '" + this.id + "': running time (nanos) = " + getTotalTimeNanos() + "\n";
+	}
+
+	/**
+	 * Return a string with a table describing all tasks performed.
+	 * For custom reporting, call getTasks() and use the task data directly.
+	 */
+	public String prettyPrint() {
+		StringBuffer sb = new StringBuffer(shortSummary());
+		Task[] tasks = getTasks();
+		long totalTimeNanos = getTotalTimeNanos();
+		sb.append("---------------------------------------------------------------------------\n");
+		sb.append("ns            %     count       avg ns      min ns      max ns      Task name\n");
+		sb.append("---------------------------------------------------------------------------\n");
+		NumberFormat nf = NumberFormat.getNumberInstance();
+		nf.setMinimumIntegerDigits(12);
+		nf.setGroupingUsed(false);
+		NumberFormat cf = NumberFormat.getNumberInstance();
+		cf.setMinimumIntegerDigits(10);
+		cf.setGroupingUsed(false);
+		NumberFormat pf = NumberFormat.getPercentInstance();
+		pf.setMinimumIntegerDigits(3);
+		pf.setGroupingUsed(false);
+		for (int i = 0; i < tasks.length; i++) {
+			long taskTimeNanos = tasks[i].getTotalTimeNanos();
+			sb.append(nf.format(taskTimeNanos) + "  ");
+			sb.append(pf.format(totalTimeNanos > 0 ? (double) taskTimeNanos / totalTimeNanos : 0) + "  ");
+			sb.append(cf.format(tasks[i].getCount()) + "  ");
+			sb.append(cf.format(tasks[i].getAverageTimeNanos()) + "  ");
+			sb.append(cf.format(tasks[i].getMinTimeNanos()) + "  ");
+			sb.append(cf.format(tasks[i].getMaxTimeNanos()) + "  ");
+			sb.append(tasks[i].getTaskName() + "\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Return an informative string describing all tasks performed
+	 * For custom reporting, call getTasks() and use the task data directly.
+	 */
+	public String toString() {
+		StringBuffer sb = new StringBuffer(shortSummary());
+		Task[] tasks = getTasks();
+		long totalTimeNanos = getTotalTimeNanos();
+		for (int i = 0; i < tasks.length; i++) {
+			if (i > 0) {
+				sb.append("; ");
+			}
+			sb.append("[" + tasks[i].getTaskName() + "] took " + tasks[i].getTotalTimeNanos());
+			sb.append(" in " + tasks[i].getCount() + " runs");
+			long percent = (totalTimeNanos > 0 ? Math.round((100.0 * tasks[i].getTotalTimeNanos()) / totalTimeNanos) : 0);
+			sb.append("=" + percent + "%");
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * Mutable per-thread state: the currently running task and its start time.
+	 */
+	private static class Timing {
+
+		private Task task;
+
+		private long startNanos;
+	}
+
+
+	/**
+	 * Aggregated timing data for one named task.
+	 * Can be used directly to record times for the task.
+	 */
+	public static class Task {
+
+		private final String taskName;
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder totalTimeNanos = new LongAdder();
+
+		private final AtomicLong minTimeNanos = new AtomicLong(Long.MAX_VALUE);
+
+		private final AtomicLong maxTimeNanos = new AtomicLong(Long.MIN_VALUE);
+
+		private Task(String taskName) {
+			this.taskName = taskName;
+		}
+
+		/**
+		 * Record the given time for this task.
+		 * @param timeNanos the time taken in nanoseconds
+		 */
+		public void record(long timeNanos) {
+			this.count.increment();
+			this.totalTimeNanos.add(timeNanos);
+			long min = this.minTimeNanos.get();
+			while (timeNanos < min && !this.minTimeNanos.compareAndSet(min, timeNanos)) {
+				min = this.minTimeNanos.get();
+			}
+			long max = this.maxTimeNanos.get();
+			while (timeNanos > max && !this.maxTimeNanos.compareAndSet(max, timeNanos)) {
+				max = this.maxTimeNanos.get();
+			}
+		}
+
+		/**
+		 * Return the name of this task.
+		 */
+		public String getTaskName() {
+			return taskName;
+		}
+
+		/**
+		 * Return the number of times this task was recorded.
+		 */
+		public long getCount() {
+			return this.count.sum();
+		}
+
+		/**
+		 * Return the total time in nanoseconds this task took.
+		 */
+		public long getTotalTimeNanos() {
+			return this.totalTimeNanos.sum();
+		}
+
+		/**
+		 * Return the total time in seconds this task took.
+		 */
+		public double getTotalTimeSeconds() {
+			return getTotalTimeNanos() / 1000000000.0;
+		}
+
+		/**
+		 * Return the average time in nanoseconds this task took.
+		 */
+		public long getAverageTimeNanos() {
+			long count = getCount();
+			return (count > 0 ? getTotalTimeNanos() / count : 0);
+		}
+
+		/**
+		 * Return the minimum time in nanoseconds this task took,
+		 * or 0 if not recorded yet.
+		 */
+		public long getMinTimeNanos() {
+			long min = this.minTimeNanos.get();
+			return (min != Long.MAX_VALUE ? min : 0);
+		}
+
+		/**
+		 * Return the maximum time in nanoseconds this task took,
+		 * or 0 if not recorded yet.
+		 */
+		public long getMaxTimeNanos() {
+			long max = this.maxTimeNanos.get();
+			return (max != Long.MIN_VALUE ? max : 0);
+		}
+
+		private void reset() {
+			this.count.reset();
+			this.totalTimeNanos.reset();
+			this.minTimeNanos.set(Long.MAX_VALUE);
+			this.maxTimeNanos.set(Long.MIN_VALUE);
+		}
+	}
+
+}
@@ -16,10 +16,10 @@
 
 package org.springframework.util;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -29,14 +29,24 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
  * Simple utility methods for file and stream copying.
- * All copy methods use a block size of 4096 bytes,
- * and close all affected streams when done.
+ * All copy methods close all affected streams and channels when done.
+ *
+ * <p>File-to-file and file-to-channel copies are performed via
+ * <code>FileChannel.transferTo</code>/<code>transferFrom</code>, allowing the
+ * operating system to copy without passing the data through the JVM. Generic
+ * stream copies start with a block size of 4096 bytes and increase it up to
+ * 64 KB for large streams. Files get read into byte arrays of the exact size.
+ * Pipes and pseudo files that don't report their size are copied as streams.
  *
  * <p>Mainly for use within the framework,
  * but also useful for application code.
@@ -50,6 +60,9 @@ public abstract class FileCopyUtils {
 
 	public static final int BUFFER_SIZE = 4096;
 
+	/** Maximum block size that stream copying grows to */
+	private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
 
 	//---------------------------------------------------------------------
 	// Copy methods for java.io.File
@@ -64,8 +77,61 @@ public abstract class FileCopyUtils {
 	public static void copy(File in, File out) throws IOException {
 		Assert.notNull(in, "No input File specified");
 		Assert.notNull(out, "No output File specified");
-		copy(new BufferedInputStream(new FileInputStream(in)),
-		    new BufferedOutputStream(new FileOutputStream(out)));
+		copy(new FileInputStream(in), new FileOutputStream(out));
+	}
+
+	/**
+	 * Copy the contents of the given input File to the given channel,
+	 * for example a socket channel. Closes the channel when done.
+	 * <p>The channel needs to be in blocking mode.
+	 * @param in the file to copy from
+	 * @param out the channel to copy to
+	 * @throws IOException in case of I/O errors
+	 */
+	public static void copy(File in, WritableByteChannel out) throws IOException {
+		Assert.notNull(in, "No input File specified");
+		Assert.notNull(out, "No output channel specified");
+		FileInputStream inStream = new FileInputStream(in);
+		try {
+			transfer(inStream.getChannel(), out);
+		}
+		finally {
+			close(inStream, out);
+		}
+	}
+
+	/**
+	 * Copy the contents of the given channel to the given output File.
+	 * Closes the channel when done.
+	 * @param in the channel to copy from
+	 * @param out the file to copy to
+	 * @throws IOException in case of I/O errors
+	 */
+	public static void copy(ReadableByteChannel in, File out) throws IOException {
+		Assert.notNull(in, "No input channel specified");
+		Assert.notNull(out, "No output File specified");
+		FileOutputStream outStream = new FileOutputStream(out);
+		try {
+			FileChannel outChannel = outStream.getChannel();
+			long position = 0;
+			long count;
+			while ((count = outChannel.transferFrom(in, position, MAX_BUFFER_SIZE * 16)) > 0) {
+				position += count;
+			}
+			// transferFrom can't tell the end of the channel from a read that
+			// returned no bytes: copy any remaining content until end of stream
+			ByteBuffer buffer = ByteBuffer.allocate(MAX_BUFFER_SIZE);
+			while (in.read(buffer) != -1) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					position += outChannel.write(buffer, position);
+				}
+				buffer.clear();
+			}
+		}
+		finally {
+			close(in, outStream);
+		}
 	}
 
 	/**
@@ -90,7 +156,7 @@ public abstract class FileCopyUtils {
 	 */
 	public static byte[] copyToByteArray(File in) throws IOException {
 		Assert.notNull(in, "No input File specified");
-		return copyToByteArray(new BufferedInputStream(new FileInputStream(in)));
+		return copyToByteArray(new FileInputStream(in));
 	}
 
 
@@ -109,26 +175,25 @@ public abstract class FileCopyUtils {
 		Assert.notNull(in, "No InputStream specified");
 		Assert.notNull(out, "No OutputStream specified");
 		try {
-			byte[] buffer = new byte[BUFFER_SIZE];
-			int nrOfBytes = -1;
-			while ((nrOfBytes = in.read(buffer)) != -1) {
-				out.write(buffer, 0, nrOfBytes);
+			if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+				// let the operating system copy between the files
+				transfer(((FileInputStream) in).getChannel(), ((FileOutputStream) out).getChannel());
+			}
+			else {
+				// start with small blocks, growing the block size while reads fill the entire buffer
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int nrOfBytes = -1;
+				while ((nrOfBytes = in.read(buffer)) != -1) {
+					out.write(buffer, 0, nrOfBytes);
+					if (nrOfBytes == buffer.length && buffer.length < MAX_BUFFER_SIZE) {
+						buffer = new byte[buffer.length * 2];
+					}
+				}
 			}
 			out.flush();
 		}
 		finally {
-			try {
-				in.close();
-			}
-			catch (IOException ex) {
-				logger.warn("Could not close InputStream", ex);
-			}
-			try {
-				out.close();
-			}
-			catch (IOException ex) {
-				logger.warn("Could not close OutputStream", ex);
-			}
+			close(in, out);
 		}
 	}
 
@@ -163,11 +228,67 @@ public abstract class FileCopyUtils {
 	 * @throws IOException in case of I/O errors
 	 */
 	public static byte[] copyToByteArray(InputStream in) throws IOException {
+		if (in instanceof FileInputStream) {
+			// the remaining length is known for regular files: read into an array of the exact size
+			long remaining = getRemainingLength(((FileInputStream) in).getChannel());
+			if (remaining != -1 && remaining <= Integer.MAX_VALUE) {
+				return copyToByteArray(in, (int) remaining);
+			}
+		}
 		ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
 		copy(in, out);
 		return out.toByteArray();
 	}
 
+	/**
+	 * Copy the contents of the given InputStream into a new byte array,
+	 * given the expected length of the content: The array gets filled
+	 * in a single read where possible, without intermediate copies.
+	 * Closes the stream when done.
+	 * @param in the stream to copy from
+	 * @param expectedLength the expected number of bytes in the stream
+	 * @return the new byte array that has been copied to
+	 * @throws IOException in case of I/O errors
+	 */
+	public static byte[] copyToByteArray(InputStream in, int expectedLength) throws IOException {
+		Assert.notNull(in, "No InputStream specified");
+		try {
+			byte[] result = new byte[expectedLength];
+			int offset = 0;
+			int nrOfBytes = 0;
+			while (offset < expectedLength && (nrOfBytes = in.read(result, offset, expectedLength - offset)) != -1) {
+				offset += nrOfBytes;
+			}
+			if (offset < expectedLength) {
+				// stream was shorter than expected
+				byte[] truncated = new byte[offset];
+				System.arraycopy(result, 0, truncated, 0, offset);
+				return truncated;
+			}
+			int next = in.read();
+			if (next == -1) {
+				return result;
+			}
+			// stream was longer than expected: append the remaining content
+			ByteArrayOutputStream out = new ByteArrayOutputStream(expectedLength + BUFFER_SIZE);
+			out.write(result);
+			out.write(next);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while ((nrOfBytes = in.read(buffer)) != -1) {
+				out.write(buffer, 0, nrOfBytes);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			try {
+				in.close();
+			}
+			catch (IOException ex) {
+				logger.warn("Could not close InputStream", ex);
+			}
+		}
+	}
+
 
 	//---------------------------------------------------------------------
 	// Copy methods for java.io.Reader / java.io.Writer
@@ -243,4 +364,77 @@ public abstract class FileCopyUtils {
 		return out.toString();
 	}
 
+
+	//---------------------------------------------------------------------
+	// Helper methods
+	//---------------------------------------------------------------------
+
+	/**
+	 * Transfer the remaining content of the given FileChannel
+	 * to the given channel, starting at the current position.
+	 * Uses <code>transferTo</code> for regular files, then copies through
+	 * a buffer until end of stream: content that <code>transferTo</code>
+	 * didn't transfer, content appended meanwhile, or the entire content
+	 * of a pipe or pseudo file. Does not close either channel.
+	 */
+	private static void transfer(FileChannel in, WritableByteChannel out) throws IOException {
+		long remaining = getRemainingLength(in);
+		if (remaining > 0) {
+			long position = in.position();
+			long end = position + remaining;
+			while (position < end) {
+				long count = in.transferTo(position, end - position, out);
+				if (count <= 0) {
+					break;
+				}
+				position += count;
+			}
+			in.position(position);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(MAX_BUFFER_SIZE);
+		while (in.read(buffer) != -1) {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Determine the remaining length of the given file from its current position.
+	 * @return the remaining number of bytes, or -1 if not a regular file with
+	 * a known size, e.g. a pipe or a pseudo file that reports a size of 0
+	 */
+	private static long getRemainingLength(FileChannel channel) {
+		try {
+			long size = channel.size();
+			if (size > 0) {
+				long position = channel.position();
+				if (position <= size) {
+					return size - position;
+				}
+			}
+		}
+		catch (IOException ex) {
+			// not seekable, e.g. a pipe
+		}
+		return -1;
+	}
+
+	private static void close(Closeable in, Closeable out) {
+		try {
+			in.close();
+		}
+		catch (IOException ex) {
+			logger.warn("Could not close input [" + in + "]", ex);
+		}
+		try {
+			out.close();
+		}
+		catch (IOException ex) {
+			logger.warn("Could not close output [" + out + "]", ex);
+		}
+	}
+
 }
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2002-2004 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.util;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+
+/**
+ * High-throughput variant of DefaultPropertiesPersister, intended for
+ * very large properties files (feature flags, message bundles).
+ *
+ * <p>When loading from a <code>java.io.FileInputStream</code> (as returned by
+ * FileSystemResource), the underlying FileChannel gets memory-mapped and the
+ * ISO-8859-1 content is parsed and unescaped in a single pass over the buffer.
+ * Other InputStreams, as well as pipes and pseudo files that don't report
+ * their size, fall back to <code>java.util.Properties.load</code>.
+ * A mapped buffer gets released right after parsing, rather than waiting
+ * for garbage collection to unmap it.
+ *
+ * <p>No String instances get created for individual lines: Only the final
+ * keys and values are materialized, using a reusable scratch buffer for
+ * unescaping. Parsing follows <code>java.util.Properties</code> semantics,
+ * that is, keys can be terminated by unescaped '=', ':' or whitespace,
+ * just like <code>java.util.Properties.load</code> for InputStreams.
+ *
+ * <p>Loading from a Reader is not optimized: It is left to
+ * DefaultPropertiesPersister, which has different key rules (keys
+ * extend up to the first '=' or ':' and get trimmed).
+ *
+ * <p>Can be specified for PropertyResourceConfigurer, PropertiesFactoryBean
+ * and ReloadableResourceBundleMessageSource via their "propertiesPersister"
+ * property.
+ *
+ * @see java.nio.channels.FileChannel#map
+ * @see org.springframework.beans.factory.config.PropertyResourceConfigurer#setPropertiesPersister
+ * @see org.springframework.context.support.ReloadableResourceBundleMessageSource#setPropertiesPersister
+ */
+public class MappedPropertiesPersister extends DefaultPropertiesPersister {
+
+	/**
+	 * Default minimum file size for memory-mapping: 64 KB.
+	 * Smaller files are read into a heap buffer instead.
+	 */
+	public static final int DEFAULT_MAPPING_THRESHOLD = 64 * 1024;
+
+	private int mappingThreshold = DEFAULT_MAPPING_THRESHOLD;
+
+
+	/**
+	 * Set the minimum file size for memory-mapping a file. Files below this
+	 * size will be read into a heap buffer, as establishing a mapping is
+	 * more expensive than a plain read for small files.
+	 * <p>Default is 64 KB. Specify 0 to always memory-map.
+	 */
+	public void setMappingThreshold(int mappingThreshold) {
+		this.mappingThreshold = mappingThreshold;
+	}
+
+	/**
+	 * Return the minimum file size for memory-mapping a file.
+	 */
+	public int getMappingThreshold() {
+		return mappingThreshold;
+	}
+
+
+	public void load(Properties props, InputStream is) throws IOException {
+		if (!(is instanceof FileInputStream)) {
+			super.load(props, is);
+			return;
+		}
+		FileChannel channel = ((FileInputStream) is).getChannel();
+		long position = 0;
+		long size = 0;
+		try {
+			position = channel.position();
+			size = channel.size() - position;
+		}
+		catch (IOException ex) {
+			// not seekable, e.g. a pipe
+		}
+		if (size <= 0 || size > Integer.MAX_VALUE) {
+			super.load(props, is);
+			return;
+		}
+		if (size >= this.mappingThreshold) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+			try {
+				channel.position(position + buffer.limit());
+				parse(props, new Latin1Sequence(buffer), true);
+			}
+			catch (InternalError err) {
+				// access beyond the end of a file that got truncated while mapped
+				throw new IOException("File truncated while parsing mapped properties content", err);
+			}
+			finally {
+				unmap(buffer);
+			}
+		}
+		else {
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+			}
+			buffer.flip();
+			channel.position(position + buffer.limit());
+			parse(props, new Latin1Sequence(buffer), true);
+		}
+	}
+
+
+	/**
+	 * Parse the given content in a single pass, putting all entries
+	 * into the given Properties object.
+	 * @param props the Properties object to load into
+	 * @param content the content to parse
+	 * @param unicodeEscapes whether to convert <code>\\uXXXX</code> escapes
+	 */
+	protected void parse(Properties props, CharSequence content, boolean unicodeEscapes) {
+		Parser parser = new Parser(content, unicodeEscapes);
+		while (parser.skipToEntry()) {
+			String key = parser.parseToken(true);
+			parser.skipSeparator();
+			String value = parser.parseToken(false);
+			props.put(key, value);
+		}
+	}
+
+
+	/**
+	 * Release the given mapped buffer, which must not be accessed afterwards.
+	 * Uses the JDK-internal cleaner, if accessible; else the mapping simply
+	 * stays until the buffer gets garbage-collected.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			// JDK 9+: sun.misc.Unsafe.invokeCleaner(ByteBuffer)
+			Class unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", new Class[] {ByteBuffer.class});
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), new Object[] {buffer});
+			return;
+		}
+		catch (Throwable ex) {
+			// not on JDK 9+ -> try JDK 8 style below
+		}
+		try {
+			// JDK 8: ((sun.nio.ch.DirectBuffer) buffer).cleaner().clean()
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner", new Class[0]);
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer, new Object[0]);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean", new Class[0]).invoke(cleaner, new Object[0]);
+			}
+		}
+		catch (Throwable ex) {
+			// leave it to garbage collection
+		}
+	}
+
+
+	/**
+	 * CharSequence view on an ISO-8859-1 encoded ByteBuffer,
+	 * avoiding a decoding pass over the entire buffer.
+	 */
+	private static class Latin1Sequence implements CharSequence {
+
+		private final ByteBuffer buffer;
+
+		public Latin1Sequence(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public int length() {
+			return this.buffer.limit();
+		}
+
+		public char charAt(int index) {
+			return (char) (this.buffer.get(index) & 0xFF);
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			StringBuffer sb = new StringBuffer(end - start);
+			for (int i = start; i < end; i++) {
+				sb.append(charAt(i));
+			}
+			return sb;
+		}
+
+		public String toString() {
+			return subSequence(0, length()).toString();
+		}
+	}
+
+
+	/**
+	 * Single-pass parser over properties content, following the line
+	 * and escape rules of <code>java.util.Properties</code>.
+	 */
+	private static class Parser {
+
+		private final CharSequence content;
+
+		private final int length;
+
+		private final boolean unicodeEscapes;
+
+		private int pos;
+
+		private char[] scratch = new char[256];
+
+		public Parser(CharSequence content, boolean unicodeEscapes) {
+			this.content = content;
+			this.length = content.length();
+			this.unicodeEscapes = unicodeEscapes;
+		}
+
+		/**
+		 * Skip whitespace, blank lines and comment lines.
+		 * @return whether there is another entry to parse
+		 */
+		public boolean skipToEntry() {
+			while (this.pos < this.length) {
+				char c = this.content.charAt(this.pos);
+				if (c == ' ' || c == '\t' || c == '\f' || c == '\r' || c == '\n') {
+					this.pos++;
+				}
+				else if (c == '#' || c == '!') {
+					skipToLineEnd();
+				}
+				else {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Skip whitespace between key and value, including
+		 * at most one '=' or ':' separator.
+		 */
+		public void skipSeparator() {
+			skipBlanks();
+			if (this.pos < this.length) {
+				char c = this.content.charAt(this.pos);
+				if (c == '=' || c == ':') {
+					this.pos++;
+					skipBlanks();
+				}
+			}
+		}
+
+		/**
+		 * Parse a key or value, resolving escapes and line continuations.
+		 * @param key whether to stop at key separators
+		 */
+		public String parseToken(boolean key) {
+			int count = 0;
+			while (this.pos < this.length) {
+				char c = this.content.charAt(this.pos);
+				if (c == '\r' || c == '\n') {
+					break;
+				}
+				if (key && (c == '=' || c == ':' || c == ' ' || c == '\t' || c == '\f')) {
+					break;
+				}
+				this.pos++;
+				if (c == '\\') {
+					if (this.pos == this.length) {
+						break;
+					}
+					c = this.content.charAt(this.pos++);
+					if (c == '\r' || c == '\n') {
+						// line continuation: skip line terminator and leading whitespace
+						if (c == '\r' && this.pos < this.length && this.content.charAt(this.pos) == '\n') {
+							this.pos++;
+						}
+						skipBlanks();
+						continue;
+					}
+					else if (c == 't') {
+						c = '\t';
+					}
+					else if (c == 'r') {
+						c = '\r';
+					}
+					else if (c == 'n') {
+						c = '\n';
+					}
+					else if (c == 'f') {
+						c = '\f';
+					}
+					else if (c == 'u' && this.unicodeEscapes) {
+						c = parseUnicode();
+					}
+				}
+				if (count == this.scratch.length) {
+					char[] newScratch = new char[this.scratch.length * 2];
+					System.arraycopy(this.scratch, 0, newScratch, 0, count);
+					this.scratch = newScratch;
+				}
+				this.scratch[count++] = c;
+			}
+			return new String(this.scratch, 0, count);
+		}
+
+		private char parseUnicode() {
+			if (this.pos + 4 > this.length) {
+				throw new IllegalArgumentException("Malformed \\uxxxx encoding at position " + this.pos);
+			}
+			int value = 0;
+			for (int i = 0; i < 4; i++) {
+				int digit = Character.digit(this.content.charAt(this.pos++), 16);
+				if (digit == -1) {
+					throw new IllegalArgumentException("Malformed \\uxxxx encoding at position " + (this.pos - 1));
+				}
+				value = (value << 4) + digit;
+			}
+			return (char) value;
+		}
+
+		private void skipBlanks() {
+			while (this.pos < this.length) {
+				char c = this.content.charAt(this.pos);
+				if (c != ' ' && c != '\t' && c != '\f') {
+					return;
+				}
+				this.pos++;
+			}
+		}
+
+		private void skipToLineEnd() {
+			while (this.pos < this.length) {
+				char c = this.content.charAt(this.pos);
+				if (c == '\r' || c == '\n') {
+					return;
+				}
+				this.pos++;
+			}
+		}
+	}
+
+}
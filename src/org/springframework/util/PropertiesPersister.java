@@ -31,10 +31,13 @@ import java.util.Properties;
  * providing java.util.Properties' native parsing, but allowing
  * for reading from any Reader and writing to any Writer,
  * for example to specify a charset for a properties file.
+ * MappedPropertiesPersister is a high-throughput alternative
+ * for very large properties files.
  *
  * @author Juergen Hoeller
  * @since 10.03.2004
  * @see DefaultPropertiesPersister
+ * @see MappedPropertiesPersister
  * @see java.util.Properties
  */
 public interface PropertiesPersister {
@@ -23,9 +23,12 @@ import java.util.Date;
  * objects that implement this interface.
  *
  * <p>Uses no synchronization, so is suitable for use in a web application.
+ * Note that concurrent updates may get lost; use ConcurrentResponseTimeMonitor
+ * for exact counts, nanosecond precision and percentiles.
  *
  * @author Rod Johnson
  * @since November 21, 2000
+ * @see ConcurrentResponseTimeMonitor
  */
 public class ResponseTimeMonitorImpl implements ResponseTimeMonitor {
 
@@ -31,9 +31,11 @@ import java.util.List;
  *
  * <p>This class is normally used to verify performance during proof-of-concepts
  * and in development, rather than as part of production applications.
+ * See ConcurrentStopWatch for thread-safe timing with nanosecond precision.
  *
  * @author Rod Johnson
  * @since May 2, 2001
+ * @see ConcurrentStopWatch
  */
 public class StopWatch {
 